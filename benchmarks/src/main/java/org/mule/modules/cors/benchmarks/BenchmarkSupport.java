@@ -0,0 +1,88 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.benchmarks;
+
+import org.mule.DefaultMuleEvent;
+import org.mule.DefaultMuleMessage;
+import org.mule.MessageExchangePattern;
+import org.mule.api.MuleContext;
+import org.mule.api.MuleEvent;
+import org.mule.api.construct.FlowConstruct;
+import org.mule.api.transport.ReplyToHandler;
+import org.mule.module.http.api.HttpConstants;
+import org.mule.module.http.api.HttpHeaders;
+import org.mule.modules.cors.model.CorsConfig;
+import org.mule.modules.cors.model.Origin;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the configs and events shared by the benchmarks.
+ */
+final class BenchmarkSupport
+{
+
+    static final List<String> ALLOWED_METHODS = Arrays.asList("GET", "POST", "PUT", "DELETE");
+    static final List<String> ALLOWED_HEADERS = Arrays.asList("Content-Type", "Authorization", "X-Requested-With");
+
+    private BenchmarkSupport()
+    {
+    }
+
+    static Origin origin(String url)
+    {
+        Origin origin = new Origin();
+        origin.setUrl(url);
+        origin.setMethods(ALLOWED_METHODS);
+        origin.setHeaders(ALLOWED_HEADERS);
+        origin.setExposeHeaders(Arrays.asList("X-Request-Id"));
+        origin.setAccessControlMaxAge(600L);
+        return origin;
+    }
+
+    static CorsConfig config(MuleContext muleContext, List<Origin> origins) throws Exception
+    {
+        CorsConfig config = new CorsConfig();
+        config.setMuleContext(muleContext);
+        config.setOrigins(origins);
+        config.initialise();
+        return config;
+    }
+
+    static MuleEvent event(MuleContext muleContext, FlowConstruct flowConstruct, Scenario scenario, ReplyToHandler replyToHandler)
+    {
+        Map<String, Object> inboundProperties = new HashMap<String, Object>();
+        inboundProperties.put(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY, scenario.getMethod());
+        putIfNotNull(inboundProperties, HttpHeaders.Names.ORIGIN, scenario.getOrigin());
+        putIfNotNull(inboundProperties, HttpHeaders.Names.ACCESS_CONTROL_REQUEST_METHOD, scenario.getRequestMethod());
+        putIfNotNull(inboundProperties, HttpHeaders.Names.ACCESS_CONTROL_REQUEST_HEADERS, scenario.getRequestHeaders());
+
+        DefaultMuleMessage message = new DefaultMuleMessage("payload", inboundProperties, null, null, muleContext);
+        return new DefaultMuleEvent(message, MessageExchangePattern.REQUEST_RESPONSE, replyToHandler, flowConstruct);
+    }
+
+    private static void putIfNotNull(Map<String, Object> properties, String name, String value)
+    {
+        if (value != null)
+        {
+            properties.put(name, value);
+        }
+    }
+}
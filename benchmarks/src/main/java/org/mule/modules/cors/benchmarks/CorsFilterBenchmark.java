@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.benchmarks;
+
+import org.mule.api.MuleContext;
+import org.mule.api.MuleEvent;
+import org.mule.construct.Flow;
+import org.mule.context.DefaultMuleContextFactory;
+import org.mule.modules.cors.CorsRequestContext;
+import org.mule.modules.cors.MuleCorsFilter;
+import org.mule.modules.cors.model.CorsConfig;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures evaluating a request with {@link MuleCorsFilter} alone and together with applying the
+ * decision, for each {@link Scenario}. Evaluating reuses the same event, since it only reads it; applying
+ * the decision gets a fresh event per invocation, built outside of the measured time, so that headers
+ * and payload changes left by the previous invocation do not make the next one cheaper.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CorsFilterBenchmark
+{
+
+    @Param
+    public Scenario scenario;
+
+    private MuleContext muleContext;
+    private CorsConfig config;
+    private MuleCorsFilter filter;
+    private Flow flow;
+    private MuleEvent event;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        muleContext = new DefaultMuleContextFactory().createMuleContext();
+        config = BenchmarkSupport.config(muleContext, Collections.singletonList(BenchmarkSupport.origin(Scenario.ALLOWED_ORIGIN)));
+        filter = new MuleCorsFilter(config, scenario.isPublicResource(), false);
+        flow = new Flow("benchmark", muleContext);
+        event = BenchmarkSupport.event(muleContext, flow, scenario, null);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        config.dispose();
+        muleContext.dispose();
+    }
+
+    @Benchmark
+    public CorsRequestContext evaluate()
+    {
+        return filter.evaluate(event);
+    }
+
+    @Benchmark
+    public MuleEvent filterAndAddHeaders(FreshEvent fresh)
+    {
+        MuleEvent event = fresh.event;
+        CorsRequestContext context = filter.evaluate(event);
+        filter.filter(event, context);
+        filter.addHeaders(event, context);
+        return event;
+    }
+
+    /**
+     * An event of the scenario that no invocation has modified yet.
+     */
+    @State(Scope.Thread)
+    public static class FreshEvent
+    {
+
+        private MuleEvent event;
+
+        @Setup(Level.Invocation)
+        public void setUp(CorsFilterBenchmark benchmark)
+        {
+            event = BenchmarkSupport.event(benchmark.muleContext, benchmark.flow, benchmark.scenario, null);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.benchmarks;
+
+import org.mule.api.MuleContext;
+import org.mule.context.DefaultMuleContextFactory;
+import org.mule.modules.cors.model.CompiledOrigin;
+import org.mule.modules.cors.model.CorsConfig;
+import org.mule.modules.cors.model.Origin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link CorsConfig#findCompiledOrigin(String)} for a growing number of configured origins, looking up
+ * origins that are configured and origins that are not.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FindOriginBenchmark
+{
+
+    @Param({"1", "100", "10000", "100000"})
+    public int origins;
+
+    private MuleContext muleContext;
+    private CorsConfig config;
+    private String[] known;
+    private String[] unknown;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        List<Origin> configured = new ArrayList<Origin>(origins);
+        for (int i = 0; i < origins; i++)
+        {
+            configured.add(BenchmarkSupport.origin(url("app", i)));
+        }
+        muleContext = new DefaultMuleContextFactory().createMuleContext();
+        config = BenchmarkSupport.config(muleContext, configured);
+
+        //rotate over a few origins so a single hot entry does not hide the cost of the lookup
+        known = new String[16];
+        unknown = new String[16];
+        for (int i = 0; i < known.length; i++)
+        {
+            known[i] = url("app", (i * 7919) % origins);
+            unknown[i] = url("other", i);
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        config.dispose();
+        muleContext.dispose();
+    }
+
+    @Benchmark
+    public CompiledOrigin knownOrigin()
+    {
+        return config.findCompiledOrigin(known[next++ & 15]);
+    }
+
+    @Benchmark
+    public CompiledOrigin unknownOrigin()
+    {
+        return config.findCompiledOrigin(unknown[next++ & 15]);
+    }
+
+    private static String url(String name, int i)
+    {
+        return "https://" + name + "-" + i + ".example.com";
+    }
+}
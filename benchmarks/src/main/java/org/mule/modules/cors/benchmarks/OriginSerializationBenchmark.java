@@ -0,0 +1,91 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.benchmarks;
+
+import org.mule.modules.cors.model.Origin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the Java serialization of an {@link Origin} as done by persistent and clustered origins
+ * stores, each value being written to and read from a stream of its own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OriginSerializationBenchmark
+{
+
+    private Origin origin;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        //lists as set by the config parser
+        Origin configured = BenchmarkSupport.origin("https://app-42.example.com");
+        origin = new Origin();
+        origin.setUrl(configured.getUrl());
+        origin.setMethods(new ArrayList<String>(configured.getMethods()));
+        origin.setHeaders(new ArrayList<String>(configured.getHeaders()));
+        origin.setExposeHeaders(new ArrayList<String>(configured.getExposeHeaders()));
+        origin.setAccessControlMaxAge(configured.getAccessControlMaxAge());
+        serialized = serialize(origin);
+    }
+
+    @Benchmark
+    public byte[] write() throws IOException
+    {
+        return serialize(origin);
+    }
+
+    @Benchmark
+    public Object read() throws IOException, ClassNotFoundException
+    {
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+        return in.readObject();
+    }
+
+    private static byte[] serialize(Origin origin) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(origin);
+        out.close();
+        return bytes.toByteArray();
+    }
+}
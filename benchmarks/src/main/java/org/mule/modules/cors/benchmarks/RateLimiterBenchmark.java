@@ -0,0 +1,81 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.benchmarks;
+
+import org.mule.modules.cors.RateLimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Takes tokens of a {@link RateLimiter} from several threads at once, all of them from the bucket of a
+ * single origin, the worst case for contention, or each one from the bucket of its own origin. The limit
+ * is high enough that tokens never run out.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark
+{
+
+    private static final String ORIGIN = "https://app.example.com";
+
+    private RateLimiter limiter;
+
+    @Setup
+    public void setUp()
+    {
+        limiter = new RateLimiter(1000000000, 1000000000, 10000);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadOrigin
+    {
+
+        private static final AtomicInteger THREADS = new AtomicInteger();
+
+        private final String origin = "https://app" + THREADS.incrementAndGet() + ".example.com";
+    }
+
+    @Benchmark
+    public boolean sameOrigin()
+    {
+        return limiter.tryAcquire(ORIGIN);
+    }
+
+    @Benchmark
+    public boolean ownOrigin(ThreadOrigin thread)
+    {
+        return limiter.tryAcquire(thread.origin);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.benchmarks;
+
+import org.mule.modules.cors.model.Origin;
+import org.mule.modules.cors.model.OriginPolicy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the regex based parsing of Access-Control-Request-Headers the filter used to do with the
+ * single pass tokenizer of {@link OriginPolicy}. Run with <code>-prof gc</code> to see the allocation rate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RequestHeadersBenchmark
+{
+
+    private static final String[] HEADER_NAMES = {
+            "Content-Type", "Authorization", "X-Requested-With", "Accept", "Accept-Language",
+            "Cache-Control", "X-Correlation-Id", "X-Client-Version", "X-Api-Key", "If-None-Match",
+            "X-Tenant-Id", "X-Request-Id", "Pragma", "X-Forwarded-For", "X-Device-Id",
+            "X-Session-Token", "X-Locale", "X-Trace-Id", "X-Span-Id", "X-Feature-Flags",
+            "X-Csrf-Token", "If-Modified-Since", "X-Channel", "X-Page-Size", "X-Page-Number",
+            "X-Retry-Count", "X-Timezone", "X-App-Name", "X-Build-Number", "X-Experiment"};
+
+    @Param({"1", "5", "10", "30"})
+    public int tokens;
+
+    //custom headers allowed on top of the common ones
+    @Param({"0", "15"})
+    public int customHeaders;
+
+    private String requestHeaders;
+    private List<String> supportedHeaders;
+    private OriginPolicy policy;
+
+    @Setup
+    public void setUp()
+    {
+        supportedHeaders = new ArrayList<String>();
+        for (int i = 0; i < customHeaders; i++)
+        {
+            supportedHeaders.add("X-Custom-Header-" + i);
+        }
+        for (String header : HEADER_NAMES)
+        {
+            supportedHeaders.add(header);
+        }
+
+        //browsers send lower case names separated by a comma and a space
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < tokens; i++)
+        {
+            if (i > 0)
+            {
+                value.append(", ");
+            }
+            value.append(HEADER_NAMES[HEADER_NAMES.length - 1 - i].toLowerCase());
+        }
+        requestHeaders = value.toString();
+
+        Origin origin = new Origin();
+        origin.setUrl("http://localhost:8081");
+        origin.setHeaders(supportedHeaders);
+        policy = OriginPolicy.compile(origin);
+    }
+
+    @Benchmark
+    public boolean regexSplit()
+    {
+        for (String header : parseMultipleHeaderValues(requestHeaders))
+        {
+            if (!containsCaseInsensitive(header, supportedHeaders))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Benchmark
+    public boolean tokenizer()
+    {
+        return policy.isSupportedRequestHeaders(requestHeaders);
+    }
+
+    private static String[] parseMultipleHeaderValues(final String headerValue)
+    {
+        if (headerValue == null || headerValue.isEmpty())
+        {
+            return new String[0];
+        }
+        String trimmedHeaderValue = headerValue.trim();
+        if (trimmedHeaderValue.isEmpty())
+        {
+            return new String[0];
+        }
+        return trimmedHeaderValue.split("\\s*,\\s*|\\s+");
+    }
+
+    private static boolean containsCaseInsensitive(String header, List<String> supportedHeaders)
+    {
+        for (String supportedHeader : supportedHeaders)
+        {
+            if (supportedHeader.equalsIgnoreCase(header))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
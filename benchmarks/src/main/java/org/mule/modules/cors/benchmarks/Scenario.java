@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.benchmarks;
+
+import org.mule.modules.cors.Constants;
+import org.mule.module.http.api.HttpConstants;
+
+/**
+ * Kinds of requests seen by the CORS filter, all against a config allowing {@link #ALLOWED_ORIGIN}.
+ */
+public enum Scenario
+{
+    /**
+     * Request without an Origin header.
+     */
+    NON_CORS(null, HttpConstants.Methods.GET.toString(), null, null, false),
+
+    /**
+     * Simple request from an allowed origin.
+     */
+    SIMPLE(Scenario.ALLOWED_ORIGIN, HttpConstants.Methods.GET.toString(), null, null, false),
+
+    /**
+     * Preflight request from an allowed origin asking for an allowed method and headers.
+     */
+    PREFLIGHT(Scenario.ALLOWED_ORIGIN, Constants.PREFLIGHT_METHOD, HttpConstants.Methods.PUT.toString(),
+              "content-type, authorization, x-requested-with", false),
+
+    /**
+     * Simple request from an origin that is not configured.
+     */
+    REJECTED("http://unknown.example.org", HttpConstants.Methods.GET.toString(), null, null, false),
+
+    /**
+     * Simple request to a public resource from an origin that is not configured.
+     */
+    PUBLIC("http://unknown.example.org", HttpConstants.Methods.GET.toString(), null, null, true);
+
+    public static final String ALLOWED_ORIGIN = "http://app.example.com";
+
+    private final String origin;
+    private final String method;
+    private final String requestMethod;
+    private final String requestHeaders;
+    private final boolean publicResource;
+
+    Scenario(String origin, String method, String requestMethod, String requestHeaders, boolean publicResource)
+    {
+        this.origin = origin;
+        this.method = method;
+        this.requestMethod = requestMethod;
+        this.requestHeaders = requestHeaders;
+        this.publicResource = publicResource;
+    }
+
+    public String getOrigin()
+    {
+        return origin;
+    }
+
+    public String getMethod()
+    {
+        return method;
+    }
+
+    public String getRequestMethod()
+    {
+        return requestMethod;
+    }
+
+    public String getRequestHeaders()
+    {
+        return requestHeaders;
+    }
+
+    public boolean isPublicResource()
+    {
+        return publicResource;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.benchmarks;
+
+import org.mule.api.store.ListableObjectStore;
+import org.mule.api.store.ObjectStoreException;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Store that spends a fixed time on every call before delegating, standing in for a persistent or
+ * remote store.
+ */
+final class SlowObjectStore<T extends Serializable> implements ListableObjectStore<T>
+{
+
+    private final ListableObjectStore<T> delegate;
+    private final long callNanos;
+
+    SlowObjectStore(ListableObjectStore<T> delegate, long callNanos)
+    {
+        this.delegate = delegate;
+        this.callNanos = callNanos;
+    }
+
+    private void call()
+    {
+        long end = System.nanoTime() + callNanos;
+        while (System.nanoTime() < end)
+        {
+            //busy wait, sleeping is far too coarse for a few microseconds
+        }
+    }
+
+    @Override
+    public boolean contains(Serializable key) throws ObjectStoreException
+    {
+        call();
+        return delegate.contains(key);
+    }
+
+    @Override
+    public void store(Serializable key, T value) throws ObjectStoreException
+    {
+        call();
+        delegate.store(key, value);
+    }
+
+    @Override
+    public T retrieve(Serializable key) throws ObjectStoreException
+    {
+        call();
+        return delegate.retrieve(key);
+    }
+
+    @Override
+    public T remove(Serializable key) throws ObjectStoreException
+    {
+        call();
+        return delegate.remove(key);
+    }
+
+    @Override
+    public boolean isPersistent()
+    {
+        return true;
+    }
+
+    @Override
+    public void clear() throws ObjectStoreException
+    {
+        call();
+        delegate.clear();
+    }
+
+    @Override
+    public void open() throws ObjectStoreException
+    {
+        delegate.open();
+    }
+
+    @Override
+    public void close() throws ObjectStoreException
+    {
+        delegate.close();
+    }
+
+    @Override
+    public List<Serializable> allKeys() throws ObjectStoreException
+    {
+        call();
+        return delegate.allKeys();
+    }
+}
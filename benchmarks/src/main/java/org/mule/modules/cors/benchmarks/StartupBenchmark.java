@@ -0,0 +1,152 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.benchmarks;
+
+import org.mule.api.MuleContext;
+import org.mule.context.DefaultMuleContextFactory;
+import org.mule.modules.cors.model.CorsConfig;
+import org.mule.modules.cors.model.Origin;
+import org.mule.modules.cors.model.OriginSnapshotWriter;
+import org.mule.util.store.InMemoryObjectStore;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link CorsConfig#initialise()}, which is what a config adds to the deploy time of an
+ * application, for a growing number of configured origins. With a shared store half of the origins are
+ * already stored, as they would be when another node deployed first, and the slow variant shows the
+ * weight of the round trips to a persistent store. The snapshot variant maps the same origins compiled
+ * by {@link OriginSnapshotWriter} instead of configuring them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark
+{
+
+    //rough cost of a call to a local persistent store
+    private static final long STORE_CALL_NANOS = 5000;
+
+    public enum Store
+    {
+        /**
+         * The in memory store the config creates for itself.
+         */
+        DEFAULT,
+        SHARED,
+        /**
+         * A shared store where every call takes {@link #STORE_CALL_NANOS}.
+         */
+        SHARED_SLOW,
+        /**
+         * No configured origins, all of them are in a snapshot.
+         */
+        SNAPSHOT
+    }
+
+    @Param({"1000", "20000", "100000"})
+    public int origins;
+
+    @Param
+    public Store store;
+
+    private MuleContext muleContext;
+    private List<Origin> configured;
+    private File snapshot;
+    private CorsConfig config;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        muleContext = new DefaultMuleContextFactory().createMuleContext();
+        configured = new ArrayList<Origin>(origins);
+        for (int i = 0; i < origins; i++)
+        {
+            configured.add(BenchmarkSupport.origin("https://app-" + i + ".example.com"));
+        }
+        if (store == Store.SNAPSHOT)
+        {
+            snapshot = File.createTempFile("origins", ".snapshot");
+            OriginSnapshotWriter.write(configured, snapshot);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void newConfig() throws Exception
+    {
+        config = new CorsConfig();
+        config.setMuleContext(muleContext);
+        if (store == Store.SNAPSHOT)
+        {
+            config.setOriginsSnapshot(snapshot);
+            return;
+        }
+        config.setOrigins(configured);
+        if (store != Store.DEFAULT)
+        {
+            InMemoryObjectStore<Origin> sharedStore = new InMemoryObjectStore<Origin>();
+            for (int i = 0; i < origins; i += 2)
+            {
+                sharedStore.store(configured.get(i).getUrl(), configured.get(i));
+            }
+            config.setOriginsStore(store == Store.SHARED ? sharedStore : new SlowObjectStore<Origin>(sharedStore, STORE_CALL_NANOS));
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void disposeConfig()
+    {
+        config.dispose();
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        muleContext.dispose();
+        if (snapshot != null)
+        {
+            snapshot.delete();
+        }
+    }
+
+    @Benchmark
+    public CorsConfig initialise() throws Exception
+    {
+        config.initialise();
+        return config;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.benchmarks;
+
+import org.mule.NonBlockingVoidMuleEvent;
+import org.mule.api.MessagingException;
+import org.mule.api.MuleContext;
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleException;
+import org.mule.api.MuleMessage;
+import org.mule.api.processor.MessageProcessor;
+import org.mule.api.transport.ReplyToHandler;
+import org.mule.construct.Flow;
+import org.mule.context.DefaultMuleContextFactory;
+import org.mule.modules.cors.model.CorsConfig;
+import org.mule.modules.cors.processors.PreflightMessageProcessor;
+import org.mule.modules.cors.processors.ValidateMessageProcessor;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a whole pass through {@link ValidateMessageProcessor}, request and response, for each
+ * {@link Scenario}. The next processor in the blocking case returns the event; in the non blocking case
+ * it replies right away through the reply to handler, as a non blocking connector would later on. The
+ * preflight variant puts a {@link PreflightMessageProcessor} ahead of the blocking path.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValidateMessageProcessorBenchmark
+{
+
+    @Param
+    public Scenario scenario;
+
+    private MuleContext muleContext;
+    private CorsConfig config;
+    private BenchmarkProcessor blockingProcessor;
+    private BenchmarkProcessor nonBlockingProcessor;
+    private PreflightMessageProcessor preflightProcessor;
+    private MuleEvent blockingEvent;
+    private MuleEvent nonBlockingEvent;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        muleContext = new DefaultMuleContextFactory().createMuleContext();
+        config = BenchmarkSupport.config(muleContext, Collections.singletonList(BenchmarkSupport.origin(Scenario.ALLOWED_ORIGIN)));
+        Flow flow = new Flow("benchmark", muleContext);
+
+        blockingProcessor = processor(new MessageProcessor()
+        {
+            @Override
+            public MuleEvent process(MuleEvent event) throws MuleException
+            {
+                return event;
+            }
+        });
+        nonBlockingProcessor = processor(new MessageProcessor()
+        {
+            @Override
+            public MuleEvent process(MuleEvent event) throws MuleException
+            {
+                event.getReplyToHandler().processReplyTo(event, null, null);
+                return NonBlockingVoidMuleEvent.getInstance();
+            }
+        });
+
+        preflightProcessor = new PreflightMessageProcessor();
+        preflightProcessor.setConfig(config);
+        preflightProcessor.setPublicResource(scenario.isPublicResource());
+        preflightProcessor.setMuleContext(muleContext);
+        preflightProcessor.setListener(new MessageProcessor()
+        {
+            @Override
+            public MuleEvent process(MuleEvent event) throws MuleException
+            {
+                return blockingProcessor.blocking(event);
+            }
+        });
+        preflightProcessor.initialise();
+
+        blockingEvent = BenchmarkSupport.event(muleContext, flow, scenario, null);
+        nonBlockingEvent = BenchmarkSupport.event(muleContext, flow, scenario, new ReplyToHandler()
+        {
+            @Override
+            public void processReplyTo(MuleEvent event, MuleMessage returnMessage, Object replyTo) throws MuleException
+            {
+            }
+
+            @Override
+            public void processExceptionReplyTo(MessagingException exception, Object replyTo)
+            {
+            }
+        });
+    }
+
+    private BenchmarkProcessor processor(MessageProcessor next) throws Exception
+    {
+        BenchmarkProcessor processor = new BenchmarkProcessor();
+        processor.setConfig(config);
+        processor.setPublicResource(scenario.isPublicResource());
+        processor.setMuleContext(muleContext);
+        processor.setListener(next);
+        processor.initialise();
+        return processor;
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        config.dispose();
+        muleContext.dispose();
+    }
+
+    @Benchmark
+    public MuleEvent processBlocking() throws MuleException
+    {
+        return blockingProcessor.blocking(blockingEvent);
+    }
+
+    @Benchmark
+    public MuleEvent processBlockingWithPreflight() throws MuleException
+    {
+        return preflightProcessor.process(blockingEvent);
+    }
+
+    @Benchmark
+    public MuleEvent processNonBlocking() throws MuleException
+    {
+        return nonBlockingProcessor.nonBlocking(nonBlockingEvent);
+    }
+
+    /**
+     * Calls the blocking and non blocking paths directly, whatever the processing strategy of the flow.
+     */
+    static class BenchmarkProcessor extends ValidateMessageProcessor
+    {
+
+        MuleEvent blocking(MuleEvent event) throws MuleException
+        {
+            return processBlocking(event);
+        }
+
+        MuleEvent nonBlocking(MuleEvent event) throws MuleException
+        {
+            return processNonBlocking(event);
+        }
+    }
+}
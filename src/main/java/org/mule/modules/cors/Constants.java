@@ -25,5 +25,10 @@ public class Constants {
 
     public static final String DEFAULT_ORIGIN_NAME = "*";
 
+    /**
+     * @deprecated only set by the deprecated {@link CorsFilter#filter(org.mule.api.MuleEvent)}, whether the flow
+     * runs is carried by {@link CorsRequestContext#isInvokeFlow()}.
+     */
+    @Deprecated
     public static final String CORS_STOP_PROCESSING_FLAG = MuleProperties.PROPERTY_PREFIX + "__corsStopProcessing";
 }
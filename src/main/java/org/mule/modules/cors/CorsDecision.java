@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors;
+
+import org.mule.api.MuleMessage;
+import org.mule.modules.cors.model.CompiledOrigin;
+
+/**
+ * Outcome of evaluating a request against the CORS configuration: whether the flow may process it,
+ * the headers to add to its response, and why it was refused if it was. It is computed once per
+ * request and then applied to the response as it is.
+ */
+public final class CorsDecision
+{
+
+    /**
+     * Why a CORS request was not allowed.
+     */
+    public enum Refusal
+    {
+        NONE,
+        UNKNOWN_ORIGIN,
+        NO_METHODS,
+        UNSUPPORTED_METHOD,
+        UNSUPPORTED_HEADERS,
+        RATE_LIMITED
+    }
+
+    /**
+     * Decision for requests without an Origin header, which are left untouched.
+     */
+    public static final CorsDecision NOT_CORS = new CorsDecision(false, false, false, true, null, Refusal.NONE, CorsHeaders.EMPTY);
+
+    /**
+     * Decisions for requests refused by a rate limit, taken without looking up their origin.
+     */
+    public static final CorsDecision RATE_LIMITED_PREFLIGHT = new CorsDecision(true, true, false, false, null, Refusal.RATE_LIMITED,
+                                                                               CorsHeaders.EMPTY);
+    public static final CorsDecision RATE_LIMITED = new CorsDecision(true, false, false, false, null, Refusal.RATE_LIMITED, CorsHeaders.EMPTY);
+
+    private final boolean cors;
+    private final boolean preflight;
+    private final boolean publicResource;
+    private final boolean invokeFlow;
+    private final CompiledOrigin origin;
+    private final Refusal refusal;
+    private final CorsHeaders headers;
+
+    private CorsDecision(boolean cors, boolean preflight, boolean publicResource, boolean invokeFlow, CompiledOrigin origin,
+                         Refusal refusal, CorsHeaders headers)
+    {
+        this.cors = cors;
+        this.preflight = preflight;
+        this.publicResource = publicResource;
+        this.invokeFlow = invokeFlow;
+        this.origin = origin;
+        this.refusal = refusal;
+        this.headers = headers;
+    }
+
+    /**
+     * Preflight requests are answered by the module and never reach the flow.
+     */
+    public static CorsDecision preflight(boolean publicResource, CompiledOrigin origin, Refusal refusal, CorsHeaders headers)
+    {
+        return new CorsDecision(true, true, publicResource, false, origin, refusal, headers);
+    }
+
+    public static CorsDecision actual(boolean publicResource, boolean invokeFlow, CompiledOrigin origin, Refusal refusal, CorsHeaders headers)
+    {
+        return new CorsDecision(true, false, publicResource, invokeFlow, origin, refusal, headers);
+    }
+
+    public boolean isCors()
+    {
+        return cors;
+    }
+
+    public boolean isPreflight()
+    {
+        return preflight;
+    }
+
+    public boolean isPublicResource()
+    {
+        return publicResource;
+    }
+
+    /**
+     * @return whether the rest of the flow may process the request.
+     */
+    public boolean isInvokeFlow()
+    {
+        return invokeFlow;
+    }
+
+    /**
+     * @return the configured origin that matched the request, or null.
+     */
+    public CompiledOrigin getOrigin()
+    {
+        return origin;
+    }
+
+    public Refusal getRefusal()
+    {
+        return refusal;
+    }
+
+    public boolean isRateLimited()
+    {
+        return refusal == Refusal.RATE_LIMITED;
+    }
+
+    public CorsHeaders getHeaders()
+    {
+        return headers;
+    }
+
+    public void applyTo(MuleMessage message)
+    {
+        headers.applyTo(message);
+    }
+}
@@ -20,10 +20,43 @@ import org.mule.api.MuleEvent;
 
 public interface CorsFilter
 {
+
+    /**
+     * Reads the request and takes its decision once; the context is then passed to
+     * {@link #filter(MuleEvent, CorsRequestContext)} and {@link #addHeaders(MuleEvent, CorsRequestContext)}
+     * so nothing is read or looked up again.
+     */
+    CorsRequestContext evaluate(MuleEvent muleEvent);
+
+    /**
+     * Clears the payload of the event if the decision does not allow the flow to run, after setting the rejection
+     * status and releasing a streaming payload as the rejection policy of the config says. Whether to run the
+     * flow is then up to the caller, see {@link CorsRequestContext#isInvokeFlow()}.
+     */
+    MuleEvent filter(MuleEvent muleEvent, CorsRequestContext context);
+
+    /**
+     * Adds the CORS headers of the decision to the response.
+     */
+    void addHeaders(MuleEvent muleEvent, CorsRequestContext context);
+
+    /**
+     * @deprecated evaluates the request again and flags the event with {@link Constants#CORS_STOP_PROCESSING_FLAG},
+     * use {@link #filter(MuleEvent, CorsRequestContext)}.
+     */
+    @Deprecated
     MuleEvent filter(MuleEvent muleEvent);
 
+    /**
+     * @deprecated evaluates the request again, use {@link #addHeaders(MuleEvent, CorsRequestContext)}.
+     */
+    @Deprecated
     void addHeaders(MuleEvent muleEvent);
 
+    /**
+     * @deprecated evaluates the request again, use {@link #addHeaders(MuleEvent, CorsRequestContext)}.
+     */
+    @Deprecated
     void addHeaders(MuleEvent muleEvent, final String origin, final String method, final String requestMethod, final String requestHeaders);
 
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors;
+
+import org.mule.api.MuleMessage;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable set of outbound CORS headers computed for a request. An empty set means the
+ * request was not allowed and no CORS header must be added to the response.
+ */
+public final class CorsHeaders
+{
+
+    public static final CorsHeaders EMPTY = new CorsHeaders(new String[0], new Object[0]);
+
+    private final String[] names;
+    private final Object[] values;
+
+    private CorsHeaders(String[] names, Object[] values)
+    {
+        this.names = names;
+        this.values = values;
+    }
+
+    public boolean isEmpty()
+    {
+        return names.length == 0;
+    }
+
+    public Object get(String name)
+    {
+        for (int i = 0; i < names.length; i++)
+        {
+            if (names[i].equals(name))
+            {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    public void applyTo(MuleMessage message)
+    {
+        for (int i = 0; i < names.length; i++)
+        {
+            message.setOutboundProperty(names[i], values[i]);
+        }
+    }
+
+    public static Builder builder()
+    {
+        return new Builder();
+    }
+
+    public static class Builder
+    {
+
+        private final Map<String, Object> headers = new LinkedHashMap<String, Object>();
+
+        /**
+         * Sets a header, replacing any value previously set for the same name.
+         */
+        public Builder set(String name, Object value)
+        {
+            headers.put(name, value);
+            return this;
+        }
+
+        public CorsHeaders build()
+        {
+            if (headers.isEmpty())
+            {
+                return EMPTY;
+            }
+            return new CorsHeaders(headers.keySet().toArray(new String[headers.size()]), headers.values().toArray());
+        }
+    }
+}
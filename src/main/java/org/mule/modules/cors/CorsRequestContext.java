@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors;
+
+/**
+ * The CORS related values of a request, read from its inbound properties once, together with the
+ * {@link CorsDecision} taken for it. It is built when the request enters the module and carried along
+ * until the response leaves it, so the message is not queried again.
+ */
+public final class CorsRequestContext
+{
+
+    /**
+     * Context of every request without an Origin header.
+     */
+    public static final CorsRequestContext NOT_CORS = new CorsRequestContext(null, null, null, null, CorsDecision.NOT_CORS);
+
+    private final String origin;
+    private final String method;
+    private final String requestMethod;
+    private final String requestHeaders;
+    private final CorsDecision decision;
+
+    public CorsRequestContext(String origin, String method, String requestMethod, String requestHeaders, CorsDecision decision)
+    {
+        this.origin = origin;
+        this.method = method;
+        this.requestMethod = requestMethod;
+        this.requestHeaders = requestHeaders;
+        this.decision = decision;
+    }
+
+    public String getOrigin()
+    {
+        return origin;
+    }
+
+    public String getMethod()
+    {
+        return method;
+    }
+
+    public String getRequestMethod()
+    {
+        return requestMethod;
+    }
+
+    public String getRequestHeaders()
+    {
+        return requestHeaders;
+    }
+
+    public boolean isCors()
+    {
+        return decision.isCors();
+    }
+
+    public boolean isPreflight()
+    {
+        return decision.isPreflight();
+    }
+
+    /**
+     * @return whether the rest of the flow may process the request.
+     */
+    public boolean isInvokeFlow()
+    {
+        return decision.isInvokeFlow();
+    }
+
+    public CorsDecision getDecision()
+    {
+        return decision;
+    }
+}
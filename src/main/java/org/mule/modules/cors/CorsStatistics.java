@@ -0,0 +1,254 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors;
+
+import org.mule.modules.cors.model.CompiledOrigin;
+import org.mule.modules.cors.model.CorsConfig;
+import org.mule.modules.cors.model.OriginStoreGuard;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Counts the decisions taken by the CORS filters of a config. Counters are striped and never locked,
+ * so recording a decision does not block and rarely contends with other threads.
+ * <p/>
+ * Preflight requests are counted both as preflights and, when refused, as unsupported method or header.
+ * Actual requests are counted as allowed or rejected, and those rejected because of the method are
+ * also counted as unsupported method. Requests refused by a rate limit are counted as rate limited, and
+ * also as rejected unless they are preflights.
+ * <p/>
+ * With a shared origins store, lookups the store could not answer are counted as stale when the last
+ * answer of the store was used instead, or as failure policy answers otherwise.
+ */
+public class CorsStatistics implements CorsStatisticsMXBean
+{
+
+    private final CorsConfig config;
+
+    private final StripedCounter nonCorsRequests = new StripedCounter();
+    private final StripedCounter preflightRequests = new StripedCounter();
+    private final StripedCounter allowedRequests = new StripedCounter();
+    private final StripedCounter rejectedRequests = new StripedCounter();
+    private final StripedCounter unsupportedMethodRequests = new StripedCounter();
+    private final StripedCounter unsupportedHeaderRequests = new StripedCounter();
+    private final StripedCounter publicResourceRequests = new StripedCounter();
+    private final StripedCounter staleOriginAnswers = new StripedCounter();
+    private final StripedCounter failurePolicyAnswers = new StripedCounter();
+    private final StripedCounter rateLimitedRequests = new StripedCounter();
+
+    /**
+     * @param config the config whose origins are reported by {@link #getOriginHits()}, may be null.
+     */
+    public CorsStatistics(CorsConfig config)
+    {
+        this.config = config;
+    }
+
+    public void nonCorsRequest()
+    {
+        nonCorsRequests.increment();
+    }
+
+    public void preflightRequest()
+    {
+        preflightRequests.increment();
+    }
+
+    public void allowedRequest()
+    {
+        allowedRequests.increment();
+    }
+
+    public void rejectedRequest()
+    {
+        rejectedRequests.increment();
+    }
+
+    public void unsupportedMethodRequest()
+    {
+        unsupportedMethodRequests.increment();
+    }
+
+    public void unsupportedHeaderRequest()
+    {
+        unsupportedHeaderRequests.increment();
+    }
+
+    public void publicResourceRequest()
+    {
+        publicResourceRequests.increment();
+    }
+
+    public void rateLimitedRequest()
+    {
+        rateLimitedRequests.increment();
+    }
+
+    public void staleOriginAnswer()
+    {
+        staleOriginAnswers.increment();
+    }
+
+    public void failurePolicyAnswer()
+    {
+        failurePolicyAnswers.increment();
+    }
+
+    @Override
+    public long getNonCorsRequests()
+    {
+        return nonCorsRequests.sum();
+    }
+
+    @Override
+    public long getPreflightRequests()
+    {
+        return preflightRequests.sum();
+    }
+
+    @Override
+    public long getAllowedRequests()
+    {
+        return allowedRequests.sum();
+    }
+
+    @Override
+    public long getRejectedRequests()
+    {
+        return rejectedRequests.sum();
+    }
+
+    @Override
+    public long getUnsupportedMethodRequests()
+    {
+        return unsupportedMethodRequests.sum();
+    }
+
+    @Override
+    public long getUnsupportedHeaderRequests()
+    {
+        return unsupportedHeaderRequests.sum();
+    }
+
+    @Override
+    public long getPublicResourceRequests()
+    {
+        return publicResourceRequests.sum();
+    }
+
+    @Override
+    public long getRateLimitedRequests()
+    {
+        return rateLimitedRequests.sum();
+    }
+
+    @Override
+    public long getStaleOriginAnswers()
+    {
+        return staleOriginAnswers.sum();
+    }
+
+    @Override
+    public long getFailurePolicyAnswers()
+    {
+        return failurePolicyAnswers.sum();
+    }
+
+    @Override
+    public String getOriginsStoreState()
+    {
+        OriginStoreGuard guard = getOriginStoreGuard();
+        return guard != null ? guard.getState().name() : null;
+    }
+
+    @Override
+    public long getOriginsStoreTimeouts()
+    {
+        OriginStoreGuard guard = getOriginStoreGuard();
+        return guard != null ? guard.getTimeouts() : 0;
+    }
+
+    @Override
+    public long getOriginsStoreFailures()
+    {
+        OriginStoreGuard guard = getOriginStoreGuard();
+        return guard != null ? guard.getFailures() : 0;
+    }
+
+    @Override
+    public long getOriginsStoreRejections()
+    {
+        OriginStoreGuard guard = getOriginStoreGuard();
+        return guard != null ? guard.getRejections() : 0;
+    }
+
+    @Override
+    public long getOriginsStoreCoalescedReads()
+    {
+        OriginStoreGuard guard = getOriginStoreGuard();
+        return guard != null ? guard.getCoalescedReads() : 0;
+    }
+
+    private OriginStoreGuard getOriginStoreGuard()
+    {
+        return config != null ? config.getOriginStoreGuard() : null;
+    }
+
+    @Override
+    public Map<String, Long> getOriginHits()
+    {
+        if (config == null)
+        {
+            return Collections.emptyMap();
+        }
+        Map<String, Long> hits = new LinkedHashMap<String, Long>();
+        for (CompiledOrigin origin : config.getCompiledOrigins())
+        {
+            hits.put(origin.getUrl(), origin.getHits());
+        }
+        return hits;
+    }
+
+    @Override
+    public void reset()
+    {
+        nonCorsRequests.reset();
+        preflightRequests.reset();
+        allowedRequests.reset();
+        rejectedRequests.reset();
+        unsupportedMethodRequests.reset();
+        unsupportedHeaderRequests.reset();
+        publicResourceRequests.reset();
+        staleOriginAnswers.reset();
+        failurePolicyAnswers.reset();
+        rateLimitedRequests.reset();
+        OriginStoreGuard guard = getOriginStoreGuard();
+        if (guard != null)
+        {
+            guard.resetCounters();
+        }
+        if (config != null)
+        {
+            for (CompiledOrigin origin : config.getCompiledOrigins())
+            {
+                origin.resetHits();
+            }
+        }
+    }
+}
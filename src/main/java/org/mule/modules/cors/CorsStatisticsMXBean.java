@@ -0,0 +1,78 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link CorsStatistics}.
+ */
+public interface CorsStatisticsMXBean
+{
+
+    long getNonCorsRequests();
+
+    long getPreflightRequests();
+
+    long getAllowedRequests();
+
+    long getRejectedRequests();
+
+    long getUnsupportedMethodRequests();
+
+    long getUnsupportedHeaderRequests();
+
+    long getPublicResourceRequests();
+
+    /**
+     * @return the requests refused by a rate limit, without looking up their origin.
+     */
+    long getRateLimitedRequests();
+
+    /**
+     * @return the lookups answered with the last answer of the shared origins store while it could not be read.
+     */
+    long getStaleOriginAnswers();
+
+    /**
+     * @return the lookups answered with the failure policy while the shared origins store could not be read.
+     */
+    long getFailurePolicyAnswers();
+
+    /**
+     * @return the state of the circuit breaker of the shared origins store, or null if there is no shared store.
+     */
+    String getOriginsStoreState();
+
+    long getOriginsStoreTimeouts();
+
+    long getOriginsStoreFailures();
+
+    long getOriginsStoreRejections();
+
+    /**
+     * @return the lookups that shared a read of the shared origins store already in progress for the same origin.
+     */
+    long getOriginsStoreCoalescedReads();
+
+    /**
+     * @return the number of requests received from each configured origin.
+     */
+    Map<String, Long> getOriginHits();
+
+    void reset();
+}
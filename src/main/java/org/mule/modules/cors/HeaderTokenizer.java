@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors;
+
+/**
+ * Single pass tokenizer for header values consisting of zero or more space, comma or space+comma
+ * separated strings, such as Access-Control-Request-Headers. Tokens are handed to a {@link TokenMatcher}
+ * as regions of the original value, so no substring or array is allocated.
+ * <p/>
+ * Tokens are the same ones produced by trimming the value and splitting it with
+ * <code>\s*,\s*|\s+</code>: consecutive or leading commas yield empty tokens, while trailing ones are ignored.
+ */
+public final class HeaderTokenizer
+{
+
+    private HeaderTokenizer()
+    {
+    }
+
+    public interface TokenMatcher
+    {
+
+        /**
+         * @return whether the token found between start (inclusive) and end (exclusive) of value is accepted.
+         */
+        boolean matches(String value, int start, int end);
+    }
+
+    /**
+     * @return true if every token of the header value is accepted by the matcher, including when there are no tokens at all.
+     */
+    public static boolean allMatch(final String headerValue, final TokenMatcher matcher)
+    {
+        if (headerValue == null)
+        {
+            return true;
+        }
+
+        int end = headerValue.length();
+        int position = 0;
+        while (position < end && headerValue.charAt(position) <= ' ')
+        {
+            position++;
+        }
+        while (end > position && headerValue.charAt(end - 1) <= ' ')
+        {
+            end--;
+        }
+
+        //empty tokens between commas are only reported if another token follows them
+        int pendingEmptyTokens = 0;
+        boolean afterComma = true;
+        while (position < end)
+        {
+            char c = headerValue.charAt(position);
+            if (c == ',')
+            {
+                if (afterComma)
+                {
+                    pendingEmptyTokens++;
+                }
+                afterComma = true;
+                position++;
+            }
+            else if (isWhitespace(c))
+            {
+                position++;
+            }
+            else
+            {
+                for (; pendingEmptyTokens > 0; pendingEmptyTokens--)
+                {
+                    if (!matcher.matches(headerValue, position, position))
+                    {
+                        return false;
+                    }
+                }
+                int tokenStart = position;
+                while (position < end && !isSeparator(headerValue.charAt(position)))
+                {
+                    position++;
+                }
+                if (!matcher.matches(headerValue, tokenStart, position))
+                {
+                    return false;
+                }
+                afterComma = false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSeparator(char c)
+    {
+        return c == ',' || isWhitespace(c);
+    }
+
+    private static boolean isWhitespace(char c)
+    {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
@@ -20,164 +20,391 @@ import org.mule.api.MuleEvent;
 import org.mule.api.MuleMessage;
 import org.mule.module.http.api.HttpConstants;
 import org.mule.module.http.api.HttpHeaders;
+import org.mule.modules.cors.CorsDecision.Refusal;
+import org.mule.modules.cors.model.CompiledOrigin;
 import org.mule.modules.cors.model.CorsConfig;
-import org.mule.modules.cors.model.Origin;
+import org.mule.modules.cors.model.OriginPolicy;
+import org.mule.modules.cors.model.RejectionPolicy;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 public class MuleCorsFilter implements CorsFilter
 {
 
-    public static final String SEPARATOR = ", ";
+    public static final String SEPARATOR = OriginPolicy.SEPARATOR;
+    public static final Integer TOO_MANY_REQUESTS = 429;
     protected transient Log logger = LogFactory.getLog(getClass());
 
     private final CorsConfig config;
     private final boolean publicResource;
     private final boolean acceptsCredentials;
+    private final PreflightCache preflightCache;
+    private final CorsStatistics statistics;
+    private final RejectionPolicy rejectionPolicy;
+    //boxed once, statuses above 127 are not cached by Integer.valueOf
+    private final Integer rejectionStatus;
+    private final long rejectionDrainLimit;
+    private final RateLimiter preflightRateLimiter;
+    private final RateLimiter rejectionRateLimiter;
+    private final boolean rateLimitByClient;
 
     public MuleCorsFilter(final CorsConfig config, final boolean publicResource, final boolean acceptsCredentials)
     {
         this.config = config;
         this.publicResource = publicResource;
         this.acceptsCredentials = acceptsCredentials;
+        this.preflightCache = config != null && config.getPreflightCacheSize() > 0 && config.isPreflightCacheSupported()
+                              ? new PreflightCache(config.getPreflightCacheSize()) : null;
+        this.statistics = config != null ? config.getStatistics() : new CorsStatistics(null);
+        this.rejectionPolicy = config != null ? config.getRejectionPolicy() : RejectionPolicy.FLOW;
+        this.rejectionStatus = config != null ? config.getRejectionStatus() : CorsConfig.DEFAULT_REJECTION_STATUS;
+        this.rejectionDrainLimit = config != null ? config.getRejectionDrainLimit() : CorsConfig.DEFAULT_REJECTION_DRAIN_LIMIT;
+        this.preflightRateLimiter = config != null ? config.getPreflightRateLimiter() : null;
+        this.rejectionRateLimiter = config != null ? config.getRejectionRateLimiter() : null;
+        this.rateLimitByClient = config != null && config.isRateLimitByClient();
     }
 
     @Override
-    public MuleEvent filter(MuleEvent event)
+    public CorsRequestContext evaluate(MuleEvent event)
     {
-        String origin = event.getMessage().getInboundProperty(HttpHeaders.Names.ORIGIN);
+        final MuleMessage message = event.getMessage();
+        final String origin = message.getInboundProperty(HttpHeaders.Names.ORIGIN);
         if (StringUtils.isEmpty(origin))
         {
-            logger.debug("Request is not a CORS request.");
-            return event;
+            return CorsRequestContext.NOT_CORS;
+        }
+
+        final String method = message.getInboundProperty(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY);
+        if (StringUtils.equals(Constants.PREFLIGHT_METHOD, method))
+        {
+            final String requestMethod = message.getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_METHOD);
+            final String requestHeaders = message.getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_HEADERS);
+            if (preflightRateLimiter != null && !preflightRateLimiter.tryAcquire(rateLimitKey(message, origin)))
+            {
+                return new CorsRequestContext(origin, method, requestMethod, requestHeaders, CorsDecision.RATE_LIMITED_PREFLIGHT);
+            }
+            return new CorsRequestContext(origin, method, requestMethod, requestHeaders,
+                                          preflightDecision(origin, requestMethod, requestHeaders));
+        }
+        if (rejectionRateLimiter == null)
+        {
+            return new CorsRequestContext(origin, method, null, null, actualDecision(origin, method));
+        }
+
+        //only rejections take tokens, an origin out of them is refused before it is looked up
+        final Object key = rateLimitKey(message, origin);
+        if (rejectionRateLimiter.isLimited(key))
+        {
+            return new CorsRequestContext(origin, method, null, null, CorsDecision.RATE_LIMITED);
+        }
+        final CorsDecision decision = actualDecision(origin, method);
+        if (!decision.isInvokeFlow())
+        {
+            rejectionRateLimiter.tryAcquire(key);
         }
-        String method = event.getMessage().getInboundProperty(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY);
-        if (shouldInvokeFlow(origin, method, publicResource))
+        return new CorsRequestContext(origin, method, null, null, decision);
+    }
+
+    private Object rateLimitKey(final MuleMessage message, final String origin)
+    {
+        if (!rateLimitByClient)
         {
-            return event;
+            return origin;
+        }
+        final String address = message.getInboundProperty(HttpConstants.RequestProperties.HTTP_REMOTE_ADDRESS);
+        return RateLimiter.key(origin, RateLimiter.client(address));
+    }
+
+    private CorsDecision decide(String origin, String method, String requestMethod, String requestHeaders)
+    {
+        if (StringUtils.isEmpty(origin))
+        {
+            return CorsDecision.NOT_CORS;
+        }
+        if (StringUtils.equals(Constants.PREFLIGHT_METHOD, method))
+        {
+            return preflightDecision(origin, requestMethod, requestHeaders);
+        }
+        return actualDecision(origin, method);
+    }
+
+    @Override
+    public MuleEvent filter(MuleEvent event, CorsRequestContext context)
+    {
+        record(context.getDecision());
+        if (!context.isInvokeFlow())
+        {
+            if (context.getDecision().isRateLimited())
+            {
+                event.getMessage().setOutboundProperty(HttpHeaders.Names.RETRY_AFTER, "1");
+                reject(event.getMessage(), TOO_MANY_REQUESTS);
+            }
+            else if (rejectionPolicy != RejectionPolicy.FLOW && !context.isPreflight())
+            {
+                reject(event.getMessage(), rejectionStatus);
+            }
+            event.getMessage().setPayload(null);
         }
-        event.getMessage().setPayload(null);
-        event.getMessage().setInvocationProperty(Constants.CORS_STOP_PROCESSING_FLAG, true);
         return event;
     }
 
+    private void reject(final MuleMessage message, final Integer status)
+    {
+        message.setOutboundProperty(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY, status);
+        if (rejectionPolicy == RejectionPolicy.FLOW)
+        {
+            return;
+        }
+        final Object payload = message.getPayload();
+        if (payload instanceof InputStream && !release((InputStream) payload))
+        {
+            //the rest of the request is still on the wire, so the connection cannot take another one
+            message.setOutboundProperty(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+        }
+    }
+
+    /**
+     * Closes the inbound stream, draining it first if the policy says so.
+     *
+     * @return whether the stream was read to its end.
+     */
+    private boolean release(final InputStream stream)
+    {
+        try
+        {
+            return rejectionPolicy == RejectionPolicy.DRAIN && drain(stream, rejectionDrainLimit);
+        }
+        catch (IOException e)
+        {
+            logger.debug("Error draining the payload of a rejected request. Error: " + e.getMessage());
+            return false;
+        }
+        finally
+        {
+            try
+            {
+                stream.close();
+            }
+            catch (IOException e)
+            {
+                logger.debug("Error closing the payload of a rejected request. Error: " + e.getMessage());
+            }
+        }
+    }
+
+    private static boolean drain(final InputStream stream, final long limit) throws IOException
+    {
+        long remaining = limit;
+        while (remaining > 0)
+        {
+            long skipped = stream.skip(remaining);
+            if (skipped <= 0)
+            {
+                //skip may stop short of the end, only a read tells
+                if (stream.read() < 0)
+                {
+                    return true;
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+        return stream.read() < 0;
+    }
+
     @Override
-    public void addHeaders(MuleEvent event)
+    public void addHeaders(MuleEvent event, CorsRequestContext context)
     {
-        final String origin = event.getMessage().getInboundProperty(HttpHeaders.Names.ORIGIN);
-        final String method = event.getMessage().getInboundProperty(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY);
-        final String requestMethod = event.getMessage().getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_METHOD);
-        final String requestHeaders = event.getMessage().getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_HEADERS);
+        context.getDecision().applyTo(event.getMessage());
+    }
 
-        addHeaders(event, origin, method, requestMethod, requestHeaders);
+    @Override
+    @Deprecated
+    public MuleEvent filter(MuleEvent event)
+    {
+        final CorsRequestContext context = evaluate(event);
+        filter(event, context);
+        if (!context.isInvokeFlow())
+        {
+            event.getMessage().setInvocationProperty(Constants.CORS_STOP_PROCESSING_FLAG, true);
+        }
+        return event;
     }
 
     @Override
-    public void addHeaders(MuleEvent event, String origin, String method, String requestMethod, String requestHeaders)
+    @Deprecated
+    public void addHeaders(MuleEvent event)
     {
+        //the request was filtered, and took its rate limit tokens, already
         final MuleMessage message = event.getMessage();
-        if(StringUtils.isEmpty(origin))
+        final String origin = message.getInboundProperty(HttpHeaders.Names.ORIGIN);
+        final String method = message.getInboundProperty(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY);
+        final String requestMethod = message.getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_METHOD);
+        final String requestHeaders = message.getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_HEADERS);
+        decide(origin, method, requestMethod, requestHeaders).applyTo(message);
+    }
+
+    @Override
+    @Deprecated
+    public void addHeaders(MuleEvent event, String origin, String method, String requestMethod, String requestHeaders)
+    {
+        decide(origin, method, requestMethod, requestHeaders).applyTo(event.getMessage());
+    }
+
+    private CorsDecision preflightDecision(final String origin, final String requestMethod, final String requestHeaders)
+    {
+        if (preflightCache == null)
         {
-            return;
+            return computePreflightDecision(origin, requestMethod, requestHeaders);
         }
 
-        boolean isPreflight = StringUtils.equals(Constants.PREFLIGHT_METHOD, method);
+        final long originsVersion = config.getOriginsVersion();
+        final PreflightCache.Key key = new PreflightCache.Key(origin, requestMethod, requestHeaders);
+        CorsDecision decision = preflightCache.get(key, originsVersion);
+        if (decision == null)
+        {
+            decision = computePreflightDecision(origin, requestMethod, requestHeaders);
+            preflightCache.put(key, decision, originsVersion);
+        }
+        return decision;
+    }
+
+    private CorsDecision computePreflightDecision(final String origin, final String requestMethod, final String requestHeaders)
+    {
+        final CorsHeaders.Builder headers = CorsHeaders.builder();
 
         if (publicResource)
         {
-            handlePublicResource(message, isPreflight, requestMethod, requestHeaders);
+            handlePublicResource(headers, requestMethod, requestHeaders);
         }
 
-        Origin configuredOrigin = null;
-        if (config != null)
+        final CompiledOrigin configuredOrigin = findCompiledOrigin(origin);
+        final Refusal refusal;
+        if (configuredOrigin == null)
         {
-            configuredOrigin = config.findOrigin(origin);
+            refusal = Refusal.UNKNOWN_ORIGIN;
         }
+        else
+        {
+            refusal = handlePreflightRequest(headers, origin, configuredOrigin, requestMethod, requestHeaders);
+        }
+        return CorsDecision.preflight(publicResource, configuredOrigin, refusal, headers.build());
+    }
 
-        if (configuredOrigin == null)
+    private CorsDecision actualDecision(final String origin, final String method)
+    {
+        final CorsHeaders.Builder headers = CorsHeaders.builder();
+
+        if (publicResource)
         {
-            return;
+            headers.set(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
         }
 
-        if(isPreflight)
+        final CompiledOrigin configuredOrigin = findCompiledOrigin(origin);
+        final Refusal refusal;
+        if (configuredOrigin == null)
         {
-            handlePreflightRequest(event.getMessage(), configuredOrigin, requestMethod, requestHeaders);
+            refusal = Refusal.UNKNOWN_ORIGIN;
         }
         else
         {
-            handleActualRequest(event.getMessage(), configuredOrigin, method);
+            refusal = handleActualRequest(headers, origin, configuredOrigin, method);
         }
+        return CorsDecision.actual(publicResource, publicResource || refusal == Refusal.NONE, configuredOrigin, refusal, headers.build());
     }
 
-    private void handlePublicResource(final MuleMessage message, final boolean isPreflight, final String requestMethod, final String requestHeaders)
+    private CompiledOrigin findCompiledOrigin(final String origin)
     {
-        message.setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
-        if (isPreflight)
+        CompiledOrigin configuredOrigin = config != null ? config.findCompiledOrigin(origin) : null;
+        if (configuredOrigin == null && logger.isDebugEnabled())
         {
-            if (requestMethod != null)
-            {
-                message.setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_METHODS, requestMethod);
-            }
-            if (requestHeaders != null)
-            {
-                message.setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_HEADERS, requestHeaders);
-            }
+            logger.debug("Could not find configuration for origin: " + origin);
         }
-        return;
+        return configuredOrigin;
     }
 
-    private void handlePreflightRequest(final MuleMessage message, final Origin origin, final String method, final String requestHeaders)
+    private void handlePublicResource(final CorsHeaders.Builder headers, final String requestMethod, final String requestHeaders)
     {
-        if(!isSupportedMethod(origin, method)
-           || !isSupportedRequestHeaders(origin, requestHeaders))
+        headers.set(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, "*");
+        if (requestMethod != null)
         {
-            return;
+            headers.set(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_METHODS, requestMethod);
+        }
+        if (requestHeaders != null)
+        {
+            headers.set(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_HEADERS, requestHeaders);
+        }
+    }
+
+    private Refusal handlePreflightRequest(final CorsHeaders.Builder headers, final String requestOrigin, final CompiledOrigin origin, final String method, final String requestHeaders)
+    {
+        final OriginPolicy policy = origin.getPolicy();
+        if (!isSupportedMethod(policy, method))
+        {
+            return Refusal.UNSUPPORTED_METHOD;
+        }
+        if (!isSupportedRequestHeaders(policy, requestHeaders))
+        {
+            return Refusal.UNSUPPORTED_HEADERS;
         }
 
-        message.setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, origin.getUrl());
-        setAllowCredentials(message);
+        headers.set(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, origin.getAllowOriginValue(requestOrigin));
+        setAllowCredentials(headers);
 
-        if (!origin.getMethods().isEmpty())
+        if (policy.getAllowMethodsValue() != null)
+        {
+            headers.set(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_METHODS, policy.getAllowMethodsValue());
+        }
+        if (policy.isAnyHeaderSupported() && requestHeaders != null)
         {
-            message.setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_METHODS, StringUtils.join(origin.getMethods(), SEPARATOR));
+            headers.set(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_HEADERS, requestHeaders);
         }
-        if (!origin.getHeaders().isEmpty())
+        else if (policy.getAllowHeadersValue() != null)
         {
-            message.setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_HEADERS, StringUtils.join(origin.getHeaders(), SEPARATOR));
+            headers.set(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_HEADERS, policy.getAllowHeadersValue());
         }
-        if (!origin.getExposeHeaders().isEmpty())
+        if (policy.getExposeHeadersValue() != null)
         {
-            message.setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_EXPOSE_HEADERS, StringUtils.join(origin.getExposeHeaders(), SEPARATOR));
+            headers.set(HttpHeaders.Names.ACCESS_CONTROL_EXPOSE_HEADERS, policy.getExposeHeadersValue());
         }
 
-        if (origin.getAccessControlMaxAge() != null)
+        if (policy.getAccessControlMaxAge() != null)
         {
-            message.setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_MAX_AGE, origin.getAccessControlMaxAge());
+            headers.set(HttpHeaders.Names.ACCESS_CONTROL_MAX_AGE, policy.getAccessControlMaxAge());
         }
+        return Refusal.NONE;
     }
 
-    private void handleActualRequest(final MuleMessage message, final Origin origin, final String method)
+    private Refusal handleActualRequest(final CorsHeaders.Builder headers, final String requestOrigin, final CompiledOrigin origin, final String method)
     {
-        if (!isSupportedMethod(origin, method))
+        final OriginPolicy policy = origin.getPolicy();
+        if (!policy.hasMethods())
         {
-            return;
+            return Refusal.NO_METHODS;
+        }
+        if (!isSupportedMethod(policy, method))
+        {
+            return Refusal.UNSUPPORTED_METHOD;
         }
 
-        message.setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, origin.getUrl());
-        setAllowCredentials(message);
-        if (!origin.getExposeHeaders().isEmpty())
+        headers.set(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, origin.getAllowOriginValue(requestOrigin));
+        setAllowCredentials(headers);
+        if (policy.getExposeHeadersValue() != null)
         {
-            message.setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_EXPOSE_HEADERS, StringUtils.join(origin.getExposeHeaders(), SEPARATOR));
+            headers.set(HttpHeaders.Names.ACCESS_CONTROL_EXPOSE_HEADERS, policy.getExposeHeadersValue());
         }
+        return Refusal.NONE;
     }
 
-    private boolean isSupportedMethod(final Origin origin, final String method)
+    private boolean isSupportedMethod(final OriginPolicy policy, final String method)
     {
-        if(!origin.getMethods().contains(method))
+        if(!policy.isSupportedMethod(method))
         {
             logger.debug("Unsupported HTTP method: " + method);
             return false;
@@ -185,17 +412,12 @@ public class MuleCorsFilter implements CorsFilter
         return true;
     }
 
-    private boolean isSupportedRequestHeaders(final Origin origin, final String requestHeaders)
+    private boolean isSupportedRequestHeaders(final OriginPolicy policy, final String requestHeaders)
     {
-        List<String> supportedHeaders = origin.getHeaders();
-        final String[] headers = parseMultipleHeaderValues(requestHeaders);
-        for(String header : headers)
+        if(!policy.isSupportedRequestHeaders(requestHeaders))
         {
-            if(!containsCaseInsensitive(header,supportedHeaders))
-            {
-                logger.debug("Unsupported HTTP request header: " + header);
-                return false;
-            }
+            logger.debug("Unsupported HTTP request headers: " + requestHeaders);
+            return false;
         }
 
         return true;
@@ -210,68 +432,79 @@ public class MuleCorsFilter implements CorsFilter
         return false;
     }
 
-    private void setAllowCredentials(final MuleMessage message)
+    private void setAllowCredentials(final CorsHeaders.Builder headers)
     {
         if (acceptsCredentials)
         {
-            message.setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+            headers.set(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
         }
     }
 
-    private boolean shouldInvokeFlow(String origin, String method, boolean publicResource)
+    /**
+     * @return the cache of preflight decisions, or null if it is disabled in the configuration.
+     */
+    public PreflightCache getPreflightCache()
+    {
+        return preflightCache;
+    }
+
+    private void record(CorsDecision decision)
     {
-        if (StringUtils.equals(Constants.PREFLIGHT_METHOD, method))
+        if (!decision.isCors())
         {
-            logger.debug("OPTIONS header, will not continue processing.");
-            return false;
+            logger.debug("Request is not a CORS request.");
+            statistics.nonCorsRequest();
+            return;
         }
 
-        if (publicResource)
+        if (decision.isPreflight())
         {
-            return true;
+            logger.debug("OPTIONS header, will not continue processing.");
+            statistics.preflightRequest();
         }
-
-        Origin configuredOrigin = config.findOrigin(origin);
-
-        if (configuredOrigin == null)
+        if (decision.isPublicResource())
         {
-            if (logger.isDebugEnabled())
+            statistics.publicResourceRequest();
+            if (!decision.isPreflight())
             {
-                logger.debug("Could not find configuration for origin: " + origin);
+                return;
             }
-            return false;
         }
 
-        if (!configuredOrigin.getMethods().isEmpty())
+        final CompiledOrigin origin = decision.getOrigin();
+        if (origin != null)
         {
-            return configuredOrigin.getMethods().contains(method);
+            origin.recordHit();
         }
-        else
-        {
-            logger.warn("Configured origin has no methods. Not allowing the execution of the flow");
-            return false;
-        }
-    }
 
-    /**
-     * Parses a header value consisting of zero or more space, comma or
-     * space+comma separated strings. The input string is trimmed before
-     * splitting.
-     */
-    private String[] parseMultipleHeaderValues(final String headerValue)
-    {
-        if(StringUtils.isEmpty(headerValue))
+        switch (decision.getRefusal())
         {
-            return new String[0];
+            case UNSUPPORTED_METHOD:
+                statistics.unsupportedMethodRequest();
+                break;
+            case UNSUPPORTED_HEADERS:
+                statistics.unsupportedHeaderRequest();
+                break;
+            case NO_METHODS:
+                logger.warn("Configured origin has no methods. Not allowing the execution of the flow");
+                break;
+            case RATE_LIMITED:
+                statistics.rateLimitedRequest();
+                break;
+            default:
+                break;
         }
 
-        String trimmedHeaderValue = headerValue.trim();
-
-        if(StringUtils.isEmpty(trimmedHeaderValue))
+        if (!decision.isPreflight())
         {
-            return new String[0];
+            if (decision.isInvokeFlow())
+            {
+                statistics.allowedRequest();
+            }
+            else
+            {
+                statistics.rejectedRequest();
+            }
         }
-
-        return trimmedHeaderValue.split("\\s*,\\s*|\\s+");
     }
 }
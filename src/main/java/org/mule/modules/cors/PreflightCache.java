@@ -0,0 +1,214 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded LRU cache of preflight decisions keyed by origin, requested method and requested headers.
+ * <p/>
+ * Entries are spread over independently locked segments to keep contention low. Every lookup carries
+ * the version of the origins configuration it is resolved against, and the whole cache is dropped as
+ * soon as that version changes.
+ */
+public class PreflightCache
+{
+
+    private static final int MAX_SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private volatile long version;
+
+    public PreflightCache(int maxSize)
+    {
+        if (maxSize <= 0)
+        {
+            throw new IllegalArgumentException("Preflight cache size must be greater than zero");
+        }
+        int segmentCount = 1;
+        while (segmentCount < MAX_SEGMENTS && segmentCount * MAX_SEGMENTS < maxSize)
+        {
+            segmentCount <<= 1;
+        }
+        segments = new Segment[segmentCount];
+        int segmentSize = Math.max(1, maxSize / segmentCount);
+        for (int i = 0; i < segmentCount; i++)
+        {
+            segments[i] = new Segment(segmentSize);
+        }
+    }
+
+    public CorsDecision get(Key key, long originsVersion)
+    {
+        if (originsVersion != version)
+        {
+            invalidate(originsVersion);
+        }
+        CorsDecision decision = segmentFor(key).get(key);
+        if (decision == null)
+        {
+            misses.incrementAndGet();
+        }
+        else
+        {
+            hits.incrementAndGet();
+        }
+        return decision;
+    }
+
+    public void put(Key key, CorsDecision decision, long originsVersion)
+    {
+        if (originsVersion == version)
+        {
+            segmentFor(key).put(key, decision);
+        }
+    }
+
+    private synchronized void invalidate(long originsVersion)
+    {
+        if (originsVersion == version)
+        {
+            return;
+        }
+        for (Segment segment : segments)
+        {
+            segment.clear();
+        }
+        version = originsVersion;
+    }
+
+    private Segment segmentFor(Key key)
+    {
+        int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (segments.length - 1)];
+    }
+
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    public int size()
+    {
+        int size = 0;
+        for (Segment segment : segments)
+        {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public static final class Key
+    {
+
+        private final String origin;
+        private final String requestMethod;
+        private final String requestHeaders;
+        private final int hash;
+
+        public Key(String origin, String requestMethod, String requestHeaders)
+        {
+            this.origin = origin;
+            this.requestMethod = requestMethod;
+            this.requestHeaders = requestHeaders;
+            int h = origin.hashCode();
+            h = 31 * h + (requestMethod == null ? 0 : requestMethod.hashCode());
+            h = 31 * h + (requestHeaders == null ? 0 : requestHeaders.hashCode());
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash
+                   && origin.equals(other.origin)
+                   && equal(requestMethod, other.requestMethod)
+                   && equal(requestHeaders, other.requestHeaders);
+        }
+
+        private static boolean equal(String a, String b)
+        {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private static final class Segment extends LinkedHashMap<Key, CorsDecision>
+    {
+
+        private final int capacity;
+
+        Segment(int capacity)
+        {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CorsDecision> eldest)
+        {
+            return size() > capacity;
+        }
+
+        @Override
+        public synchronized CorsDecision get(Object key)
+        {
+            return super.get(key);
+        }
+
+        @Override
+        public synchronized CorsDecision put(Key key, CorsDecision value)
+        {
+            return super.put(key, value);
+        }
+
+        @Override
+        public synchronized void clear()
+        {
+            super.clear();
+        }
+
+        @Override
+        public synchronized int size()
+        {
+            return super.size();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token buckets keyed by origin, or by origin and client, that let through a steady number of requests
+ * per second plus a burst.
+ * <p/>
+ * Each bucket is a single {@link AtomicLong} holding the time at which it is next full again, so taking a
+ * token is one compare and set and never locks: the bucket has a token when that time is at most a burst
+ * worth of tokens ahead of now, and taking it moves the time one interval further. Buckets live in a
+ * concurrent map, which already spreads its keys over independently updated bins. Once the map holds
+ * the maximum number of keys, buckets that are full again are dropped since they are the same as a missing
+ * one. Looking for them takes a walk over every bucket, so a single request does it at most once per trim
+ * interval, the time an emptied bucket takes to be full again but no more than a second. Until there is
+ * room, new keys are let through without a bucket, just as a new bucket would: buckets still in use are
+ * never dropped, so a flood of new keys can neither reset the keys being limited nor throttle other new ones.
+ */
+public class RateLimiter
+{
+
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final int maxKeys;
+    private final long trimIntervalNanos;
+    private final ConcurrentMap<Object, AtomicLong> buckets = new ConcurrentHashMap<Object, AtomicLong>();
+    private final AtomicLong nextTrim = new AtomicLong(System.nanoTime());
+
+    /**
+     * @param permitsPerSecond requests let through per second and key.
+     * @param burst            requests let through at once after a quiet period, at least one.
+     * @param maxKeys          keys tracked at the same time.
+     */
+    public RateLimiter(int permitsPerSecond, int burst, int maxKeys)
+    {
+        if (permitsPerSecond <= 0 || burst <= 0 || maxKeys <= 0)
+        {
+            throw new IllegalArgumentException("Rate limit, burst and keys must be greater than zero");
+        }
+        this.intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.toleranceNanos = intervalNanos * (burst - 1);
+        this.maxKeys = maxKeys;
+        this.trimIntervalNanos = Math.min(intervalNanos + toleranceNanos, TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * @return the key of the bucket for requests from the origin, and from the client as well if it is not null.
+     */
+    public static Object key(String origin, String client)
+    {
+        return client == null ? origin : new Key(origin, client);
+    }
+
+    /**
+     * @return the remote address of a request without its port, which changes with every connection of the
+     * client. Unbracketed IPv6 addresses only carry a port after all eight of their groups.
+     */
+    public static String client(String remoteAddress)
+    {
+        if (remoteAddress == null)
+        {
+            return null;
+        }
+        final int colon = remoteAddress.lastIndexOf(':');
+        if (colon <= 0)
+        {
+            return remoteAddress;
+        }
+        final int bracket = remoteAddress.lastIndexOf(']');
+        if (bracket >= 0)
+        {
+            return bracket == colon - 1 ? remoteAddress.substring(0, colon) : remoteAddress;
+        }
+        int colons = 0;
+        for (int i = 0; i < remoteAddress.length(); i++)
+        {
+            if (remoteAddress.charAt(i) == ':')
+            {
+                colons++;
+            }
+        }
+        return colons == 1 || colons == 8 ? remoteAddress.substring(0, colon) : remoteAddress;
+    }
+
+    /**
+     * Takes a token from the bucket of the key.
+     *
+     * @return false if there was none, in which case nothing was taken.
+     */
+    public boolean tryAcquire(Object key)
+    {
+        final AtomicLong bucket = bucketFor(key);
+        if (bucket == null)
+        {
+            //no room for the key, it gets what a new bucket would give
+            return true;
+        }
+        final long now = System.nanoTime();
+        for (;;)
+        {
+            long fullAt = bucket.get();
+            long from = fullAt - now > 0 ? fullAt : now;
+            if (from - now > toleranceNanos)
+            {
+                return false;
+            }
+            if (bucket.compareAndSet(fullAt, from + intervalNanos))
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return whether the bucket of the key has no token left, without taking any.
+     */
+    public boolean isLimited(Object key)
+    {
+        final AtomicLong bucket = buckets.get(key);
+        return bucket != null && bucket.get() - System.nanoTime() > toleranceNanos;
+    }
+
+    public int size()
+    {
+        return buckets.size();
+    }
+
+    private AtomicLong bucketFor(Object key)
+    {
+        AtomicLong bucket = buckets.get(key);
+        if (bucket != null)
+        {
+            return bucket;
+        }
+        if (buckets.size() >= maxKeys && !trim())
+        {
+            return null;
+        }
+        bucket = new AtomicLong(System.nanoTime());
+        AtomicLong existing = buckets.putIfAbsent(key, bucket);
+        return existing != null ? existing : bucket;
+    }
+
+    /**
+     * Drops the buckets that are full again, unless another request did less than a trim interval ago.
+     *
+     * @return whether any was dropped.
+     */
+    private boolean trim()
+    {
+        final long now = System.nanoTime();
+        final long next = nextTrim.get();
+        if (now - next < 0 || !nextTrim.compareAndSet(next, now + trimIntervalNanos))
+        {
+            return false;
+        }
+        boolean evicted = false;
+        Iterator<AtomicLong> full = buckets.values().iterator();
+        while (full.hasNext())
+        {
+            if (full.next().get() - now <= 0)
+            {
+                full.remove();
+                evicted = true;
+            }
+        }
+        return evicted;
+    }
+
+    static final class Key
+    {
+
+        private final String origin;
+        private final String client;
+        private final int hash;
+
+        Key(String origin, String client)
+        {
+            this.origin = origin;
+            this.client = client;
+            this.hash = 31 * origin.hashCode() + client.hashCode();
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Key))
+            {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && origin.equals(other.origin) && client.equals(other.client);
+        }
+    }
+}
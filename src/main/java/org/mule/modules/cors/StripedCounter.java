@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over several cells, each one on its own cache line, so that threads incrementing it
+ * concurrently rarely contend on the same memory. Reading the value adds up all the cells.
+ */
+public final class StripedCounter
+{
+
+    //longs per cell, so that two cells never share a 64 byte cache line
+    private static final int PADDING = 8;
+    private static final int MAX_STRIPES = 64;
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    public void increment()
+    {
+        cells.incrementAndGet(cell());
+    }
+
+    public long sum()
+    {
+        long sum = 0;
+        for (int i = 0; i < cells.length(); i += PADDING)
+        {
+            sum += cells.get(i);
+        }
+        return sum;
+    }
+
+    public void reset()
+    {
+        for (int i = 0; i < cells.length(); i += PADDING)
+        {
+            cells.set(i, 0);
+        }
+    }
+
+    private static int cell()
+    {
+        long id = Thread.currentThread().getId();
+        return ((int) (id ^ (id >>> 32)) & (STRIPES - 1)) * PADDING;
+    }
+
+    private static int stripes()
+    {
+        int processors = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < processors && stripes < MAX_STRIPES)
+        {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+}
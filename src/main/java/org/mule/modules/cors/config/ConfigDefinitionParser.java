@@ -19,10 +19,16 @@ package org.mule.modules.cors.config;
 import org.mule.modules.cors.model.CorsConfig;
 import org.mule.modules.cors.model.Origin;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.RuntimeBeanReference;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.ParserContext;
+import org.springframework.util.xml.DomUtils;
 import org.w3c.dom.Element;
 
 public class ConfigDefinitionParser extends AbstractDefinitionParser {
@@ -32,28 +38,35 @@ public class ConfigDefinitionParser extends AbstractDefinitionParser {
         BeanDefinitionBuilder builder = BeanDefinitionBuilder.rootBeanDefinition(CorsConfig.class.getName());
         builder.setScope(BeanDefinition.SCOPE_SINGLETON);
         parseProperty(builder, element, "storePrefix", "storePrefix");
+        parseProperty(builder, element, "preflightCacheSize", "preflightCacheSize");
+        parseProperty(builder, element, "originFilterFalsePositiveRate", "originFilterFalsePositiveRate");
+        parseProperty(builder, element, "originsFile", "originsFile");
+        parseProperty(builder, element, "originsSnapshot", "originsSnapshot");
+        parseProperty(builder, element, "originsCacheSize", "originsCacheSize");
+        parseProperty(builder, element, "originsCacheCheckInterval", "originsCacheCheckInterval");
+        parseProperty(builder, element, "originsCacheTtl", "originsCacheTtl");
+        parseProperty(builder, element, "originsCacheNegativeTtl", "originsCacheNegativeTtl");
+        parseProperty(builder, element, "originsCacheRefreshAhead", "originsCacheRefreshAhead");
+        parseProperty(builder, element, "originsStoreTimeout", "originsStoreTimeout");
+        parseProperty(builder, element, "originsStoreFailureThreshold", "originsStoreFailureThreshold");
+        parseProperty(builder, element, "originsStoreOpenTime", "originsStoreOpenTime");
+        parseProperty(builder, element, "originsStoreFailurePolicy", "originsStoreFailurePolicy");
+        parseProperty(builder, element, "rejectionPolicy", "rejectionPolicy");
+        parseProperty(builder, element, "rejectionStatus", "rejectionStatus");
+        parseProperty(builder, element, "rejectionDrainLimit", "rejectionDrainLimit");
+        parseProperty(builder, element, "preflightRateLimit", "preflightRateLimit");
+        parseProperty(builder, element, "rejectionRateLimit", "rejectionRateLimit");
+        parseProperty(builder, element, "rateLimitBurst", "rateLimitBurst");
+        parseProperty(builder, element, "rateLimitByClient", "rateLimitByClient");
+        //origins usually repeat the same few methods and headers, which they share rather than each get a copy
+        final Map<String, String> sharedValues = new HashMap<String, String>();
         parseListAndSetProperty(element, builder, "origins", "origins", "origin", new ParseDelegate<BeanDefinition>() {
                 public BeanDefinition parse(Element element) {
                     BeanDefinitionBuilder builder = BeanDefinitionBuilder.rootBeanDefinition(Origin.class);
                     parseProperty(builder, element, "url", "url");
-                    parseListAndSetProperty(element, builder, "methods", "methods", "method", new ParseDelegate<String>() {
-                            public String parse(Element element) {
-                                return element.getTextContent();
-                            }
-                        }
-                    );
-                    parseListAndSetProperty(element, builder, "headers", "headers", "header", new ParseDelegate<String>() {
-                            public String parse(Element element) {
-                                return element.getTextContent();
-                            }
-                        }
-                    );
-                    parseListAndSetProperty(element, builder, "exposeHeaders", "expose-headers", "expose-header", new ParseDelegate<String>() {
-                            public String parse(Element element) {
-                                return element.getTextContent();
-                            }
-                        }
-                    );
+                    parseSharedListAndSetProperty(element, builder, "methods", "methods", "method", sharedValues);
+                    parseSharedListAndSetProperty(element, builder, "headers", "headers", "header", sharedValues);
+                    parseSharedListAndSetProperty(element, builder, "exposeHeaders", "expose-headers", "expose-header", sharedValues);
                     parseProperty(builder, element, "accessControlMaxAge", "accessControlMaxAge");
                     return builder.getBeanDefinition();
                 }
@@ -71,4 +84,41 @@ public class ConfigDefinitionParser extends AbstractDefinitionParser {
         setNoRecurseOnDefinition(definition);
         return definition;
     }
+
+    /**
+     * Sets a list of plain values made of the same instance for every equal value. Each origin gets a list
+     * of its own it may change, only compiled policies share equal lists. Lists given by reference or
+     * holding references are parsed as usual.
+     */
+    private void parseSharedListAndSetProperty(Element element, BeanDefinitionBuilder builder, String fieldName, String parentElementName, String childElementName, Map<String, String> sharedValues) {
+        Element domElement = DomUtils.getChildElementByTagName(element, parentElementName);
+        if (domElement == null) {
+            return;
+        }
+        List<Element> childDomElements = DomUtils.getChildElementsByTagName(domElement, childElementName);
+        List<String> values = new ArrayList<String>(childDomElements.size());
+        for (Element childDomElement: childDomElements) {
+            if (hasAttribute(childDomElement, "value-ref")) {
+                values = null;
+                break;
+            }
+            String value = childDomElement.getTextContent();
+            String shared = sharedValues.get(value);
+            if (shared == null) {
+                shared = value;
+                sharedValues.put(shared, shared);
+            }
+            values.add(shared);
+        }
+        if (values == null || hasAttribute(domElement, "ref")) {
+            parseListAndSetProperty(element, builder, fieldName, parentElementName, childElementName, new ParseDelegate<String>() {
+                    public String parse(Element element) {
+                        return element.getTextContent();
+                    }
+                }
+            );
+            return;
+        }
+        builder.addPropertyValue(fieldName, values);
+    }
 }
@@ -18,6 +18,7 @@ package org.mule.modules.cors.config;
 
 import org.mule.config.spring.handlers.AbstractMuleNamespaceHandler;
 import org.mule.config.spring.parsers.generic.ChildDefinitionParser;
+import org.mule.modules.cors.processors.PreflightMessageProcessor;
 import org.mule.modules.cors.processors.ValidateMessageProcessor;
 
 public class CorsNamespaceHandler extends AbstractMuleNamespaceHandler {
@@ -26,5 +27,6 @@ public class CorsNamespaceHandler extends AbstractMuleNamespaceHandler {
     public void init() {
         registerBeanDefinitionParser("config", new ConfigDefinitionParser());
         registerBeanDefinitionParser("validate", new ChildDefinitionParser("messageProcessor", ValidateMessageProcessor.class));
+        registerBeanDefinitionParser("preflight", new ChildDefinitionParser("messageProcessor", PreflightMessageProcessor.class));
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import java.util.Collection;
+
+/**
+ * Immutable set of names, such as HTTP header names, compared ignoring case. It is an open addressing
+ * table whose hash is computed over case folded characters, so a region of a larger string can be
+ * looked up without creating a lower case copy of it.
+ */
+public final class CaseInsensitiveNameSet
+{
+
+    private final String[] table;
+    private final int mask;
+    private final int size;
+
+    public CaseInsensitiveNameSet(Collection<String> names)
+    {
+        int capacity = 2;
+        while (capacity < names.size() * 2)
+        {
+            capacity <<= 1;
+        }
+        table = new String[capacity];
+        mask = capacity - 1;
+
+        int count = 0;
+        for (String name : names)
+        {
+            if (name != null && !contains(name, 0, name.length()))
+            {
+                int slot = hash(name, 0, name.length()) & mask;
+                while (table[slot] != null)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = name;
+                count++;
+            }
+        }
+        size = count;
+    }
+
+    public boolean contains(String name)
+    {
+        return name != null && contains(name, 0, name.length());
+    }
+
+    /**
+     * @return whether the set contains the name found between start (inclusive) and end (exclusive) of value.
+     */
+    public boolean contains(String value, int start, int end)
+    {
+        final int length = end - start;
+        int slot = hash(value, start, end) & mask;
+        String candidate;
+        while ((candidate = table[slot]) != null)
+        {
+            if (candidate.length() == length && candidate.regionMatches(true, 0, value, start, length))
+            {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    private static int hash(String value, int start, int end)
+    {
+        int h = 0;
+        for (int i = start; i < end; i++)
+        {
+            h = 31 * h + fold(value.charAt(i));
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static char fold(char c)
+    {
+        if (c < 0x80)
+        {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        //same folding String.regionMatches applies when ignoring case
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
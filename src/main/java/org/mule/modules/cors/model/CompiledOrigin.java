@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import org.mule.modules.cors.StripedCounter;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A configured origin as used on the request path: its url together with its compiled {@link OriginPolicy},
+ * which may be shared with other origins. The {@link Origin} it was compiled from is not kept.
+ */
+public final class CompiledOrigin
+{
+
+    private final String url;
+    private final OriginPolicy policy;
+    private final boolean pattern;
+
+    private static final AtomicLongFieldUpdater<CompiledOrigin> HITS = AtomicLongFieldUpdater.newUpdater(CompiledOrigin.class, "hits");
+    private static final AtomicReferenceFieldUpdater<CompiledOrigin, StripedCounter> CONTENDED_HITS =
+            AtomicReferenceFieldUpdater.newUpdater(CompiledOrigin.class, StripedCounter.class, "contendedHits");
+    private volatile long hits;
+    //cells taking the hits once threads contend on the plain counter, only hot origins pay for them
+    private volatile StripedCounter contendedHits;
+
+    private CompiledOrigin(String url, OriginPolicy policy)
+    {
+        this(url, policy, WildcardOriginTrie.isPattern(url));
+    }
+
+    private CompiledOrigin(String url, OriginPolicy policy, boolean pattern)
+    {
+        this.url = url;
+        this.policy = policy;
+        this.pattern = pattern;
+    }
+
+    public static CompiledOrigin compile(Origin origin)
+    {
+        return origin == null ? null : new CompiledOrigin(origin.getUrl(), OriginPolicy.compile(origin));
+    }
+
+    /**
+     * Compiles the origin reusing a policy of the pool when an equal one was already compiled.
+     */
+    public static CompiledOrigin compile(Origin origin, OriginPolicy.Pool policies)
+    {
+        return origin == null ? null : new CompiledOrigin(origin.getUrl(), policies.compile(origin));
+    }
+
+    /**
+     * @return an origin with the given url and an already compiled policy.
+     */
+    static CompiledOrigin compile(String url, OriginPolicy policy)
+    {
+        return new CompiledOrigin(url, policy);
+    }
+
+    /**
+     * @return an origin matching whatever origin a request comes from, which it allows as it is.
+     */
+    static CompiledOrigin anyOrigin(OriginPolicy policy)
+    {
+        return new CompiledOrigin("*", policy, true);
+    }
+
+    /**
+     * @return a new, modifiable origin with the url and access rules of this one.
+     */
+    public Origin toOrigin()
+    {
+        Origin origin = new Origin();
+        origin.setUrl(url);
+        origin.setMethods(new ArrayList<String>(policy.getMethods()));
+        origin.setHeaders(new ArrayList<String>(policy.getHeaders()));
+        origin.setExposeHeaders(new ArrayList<String>(policy.getExposeHeaders()));
+        origin.setAccessControlMaxAge(policy.getAccessControlMaxAge());
+        return origin;
+    }
+
+    public String getUrl()
+    {
+        return url;
+    }
+
+    /**
+     * @return whether the url is a wildcard subdomain pattern.
+     */
+    public boolean isPattern()
+    {
+        return pattern;
+    }
+
+    /**
+     * @return the value of the Access-Control-Allow-Origin header for a request coming from the given origin.
+     */
+    public String getAllowOriginValue(String requestOrigin)
+    {
+        return pattern ? requestOrigin : url;
+    }
+
+    public OriginPolicy getPolicy()
+    {
+        return policy;
+    }
+
+    /**
+     * @return whether the other origin has the same url and access rules, whatever hits either counted.
+     */
+    boolean hasSameRules(CompiledOrigin other)
+    {
+        return (url == null ? other.url == null : url.equals(other.url)) && pattern == other.pattern
+               && (policy == other.policy || policy.hasSameRules(other.policy));
+    }
+
+    /**
+     * Counts a request received from this origin.
+     */
+    public void recordHit()
+    {
+        StripedCounter cells = contendedHits;
+        if (cells == null)
+        {
+            long current = hits;
+            if (HITS.compareAndSet(this, current, current + 1))
+            {
+                return;
+            }
+            CONTENDED_HITS.compareAndSet(this, null, new StripedCounter());
+            cells = contendedHits;
+        }
+        cells.increment();
+    }
+
+    public long getHits()
+    {
+        StripedCounter cells = contendedHits;
+        return cells == null ? hits : hits + cells.sum();
+    }
+
+    public void resetHits()
+    {
+        hits = 0;
+        StripedCounter cells = contendedHits;
+        if (cells != null)
+        {
+            cells.reset();
+        }
+    }
+}
@@ -21,50 +21,266 @@ import org.mule.api.context.MuleContextAware;
 import org.mule.api.lifecycle.Disposable;
 import org.mule.api.lifecycle.Initialisable;
 import org.mule.api.lifecycle.InitialisationException;
+import org.mule.api.store.ListableObjectStore;
 import org.mule.api.store.ObjectAlreadyExistsException;
+import org.mule.api.store.ObjectDoesNotExistException;
 import org.mule.api.store.ObjectStore;
 import org.mule.api.store.ObjectStoreException;
 import org.mule.modules.cors.Constants;
+import org.mule.modules.cors.CorsStatistics;
+import org.mule.modules.cors.RateLimiter;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.BeanNameAware;
 
-public class CorsConfig implements Initialisable, Disposable, MuleContextAware
+public class CorsConfig implements Initialisable, Disposable, MuleContextAware, BeanNameAware
 {
 
+    public static final String STATISTICS_DOMAIN = "org.mule.modules.cors";
+    public static final long DEFAULT_ORIGINS_CACHE_CHECK_INTERVAL = 1000;
+    public static final long DEFAULT_ORIGINS_STORE_OPEN_TIME = 30000;
+    public static final int DEFAULT_REJECTION_STATUS = 403;
+    public static final long DEFAULT_REJECTION_DRAIN_LIMIT = 64 * 1024;
+
+    //origins, or origins and clients, whose request rate is tracked at the same time
+    private static final int RATE_LIMIT_KEYS = 10000;
+
+    //answers of the shared store kept to fall back to while it cannot be read
+    private static final int LAST_KNOWN_ORIGINS = 10000;
+
+    //marks an origin last known not to be in the store
+    private static final CompiledOrigin NOT_STORED = CompiledOrigin.compile(new Origin());
+
+    private static final List<String> STANDARD_METHODS = Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "CONNECT",
+                                                                       "OPTIONS", "TRACE", "PATCH");
+
+    //answer of FAIL_OPEN for any origin the store cannot be asked about
+    private static final CompiledOrigin FAIL_OPEN_ORIGIN = CompiledOrigin.anyOrigin(OriginPolicy.anyHeader(STANDARD_METHODS));
+
     protected transient Log logger = LogFactory.getLog(getClass());
 
     private String storePrefix;
     private List<Origin> origins;
     private ObjectStore<Origin> originsStore;
     private MuleContext muleContext;
+    private int preflightCacheSize;
+    private double originFilterFalsePositiveRate;
+    private String name;
+    private File originsFile;
+    private File originsSnapshot;
+    private int originsCacheSize;
+    private long originsCacheCheckInterval = DEFAULT_ORIGINS_CACHE_CHECK_INTERVAL;
+    private long originsCacheTtl;
+    private long originsCacheNegativeTtl;
+    private long originsCacheRefreshAhead;
+    private long originsStoreTimeout;
+    private int originsStoreFailureThreshold;
+    private long originsStoreOpenTime = DEFAULT_ORIGINS_STORE_OPEN_TIME;
+    private OriginsStoreFailurePolicy originsStoreFailurePolicy = OriginsStoreFailurePolicy.FAIL_CLOSED;
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.FLOW;
+    private int rejectionStatus = DEFAULT_REJECTION_STATUS;
+    private long rejectionDrainLimit = DEFAULT_REJECTION_DRAIN_LIMIT;
+    private int preflightRateLimit;
+    private int rejectionRateLimit;
+    private int rateLimitBurst;
+    private boolean rateLimitByClient;
+    private RateLimiter preflightRateLimiter;
+    private RateLimiter rejectionRateLimiter;
+
+    //compiled snapshot of the configured origins, read without locking on every request
+    private volatile OriginIndex originIndex = OriginIndex.EMPTY;
+
+    //incremented every time a new origin index is published
+    private final AtomicLong originsVersion = new AtomicLong();
+
+    //true when the store was provided by the user and may hold origins not present in the configuration
+    private boolean sharedStore;
+
+    //configured origins as found in the store, the base of every snapshot, read again when a shared store changes
+    private List<Origin> storedOrigins = Collections.emptyList();
+
+    //origins last read from the origins file, indexed again along with the stored origins
+    private List<Origin> fileOrigins = Collections.emptyList();
+    private OriginsFileWatcher originsFileWatcher;
+    private volatile OriginSnapshot snapshot;
+    private volatile OriginStoreCache originStoreCache;
+    private OriginStoreGuard originStoreGuard;
+    private final ConcurrentMap<String, CompiledOrigin> lastKnownOrigins = new ConcurrentHashMap<String, CompiledOrigin>();
+
+    //reindexes the origins when the shared store changes and trims the last known origins, only with a shared store
+    private volatile ScheduledExecutorService storeMaintenance;
+    private volatile boolean originFilterEnabled;
+    private final AtomicBoolean storedOriginsReloadPending = new AtomicBoolean();
+    private final AtomicBoolean lastKnownOriginsTrimPending = new AtomicBoolean();
+    private Serializable polledStoreVersion;
+
+    //held while building and publishing an index, so that a file reload and a filter rebuild do not undo each other
+    private final Object indexLock = new Object();
+
+    private final CorsStatistics statistics = new CorsStatistics(this);
+    private ObjectName statisticsName;
 
+    /**
+     * @return a copy of the origin that applies to the given url, or null if the origin is not allowed.
+     */
     public Origin findOrigin(String origin)
     {
+        CompiledOrigin compiledOrigin = findCompiledOrigin(origin);
+        return compiledOrigin != null ? compiledOrigin.toOrigin() : null;
+    }
+
+    /**
+     * Looks up the origin that applies to the given url, falling back to the default (*) origin.
+     *
+     * @return the compiled origin, or null if the origin is not allowed.
+     */
+    public CompiledOrigin findCompiledOrigin(String origin)
+    {
+        final OriginIndex index = originIndex;
+        final OriginSnapshot currentSnapshot = snapshot;
+        if (!sharedStore && currentSnapshot == null)
+        {
+            return index.find(origin);
+        }
+
+        //exact matches, either local, from the snapshot or shared, win over wildcard patterns
+        CompiledOrigin configuredOrigin = index.getExact(origin);
+        if (configuredOrigin == null && currentSnapshot != null)
+        {
+            configuredOrigin = currentSnapshot.find(origin);
+        }
+        if (configuredOrigin == null && sharedStore && index.mightBeStored(origin))
+        {
+            configuredOrigin = findStoredOrigin(origin);
+        }
+        if (configuredOrigin == null)
+        {
+            configuredOrigin = index.getPattern(origin);
+        }
+        if (configuredOrigin == null)
+        {
+            configuredOrigin = index.getDefaultOrigin();
+        }
+        if (configuredOrigin == null && sharedStore && index.mightBeStored(Constants.DEFAULT_ORIGIN_NAME))
+        {
+            configuredOrigin = findStoredOrigin(Constants.DEFAULT_ORIGIN_NAME);
+        }
+        return configuredOrigin;
+    }
+
+    private CompiledOrigin findStoredOrigin(String origin)
+    {
+        //if origin is not present then don't add headers
+        if (origin == null)
+        {
+            return null;
+        }
+        final OriginStoreCache cache = originStoreCache;
+        CompiledOrigin storedOrigin;
         try
         {
-            //if origin is not present then don't add headers
-            if (!getOriginsStore().contains(origin))
+            storedOrigin = cache != null ? cache.get(origin) : loadStoredOrigin(origin);
+        }
+        catch (ObjectStoreException ose)
+        {
+            return storeUnavailable(origin, ose);
+        }
+        remember(origin, storedOrigin != null ? storedOrigin : NOT_STORED);
+        return storedOrigin;
+    }
+
+    private CompiledOrigin loadStoredOrigin(String origin) throws ObjectStoreException
+    {
+        Serializable value = originStoreGuard.retrieve(origin);
+        return value instanceof Origin ? CompiledOrigin.compile((Origin) value) : null;
+    }
+
+    private void remember(String origin, CompiledOrigin storedOrigin)
+    {
+        //origins read without a near cache are compiled anew every time, an equal answer needs no write
+        CompiledOrigin lastKnown = lastKnownOrigins.get(origin);
+        if (lastKnown == storedOrigin || (lastKnown != null && lastKnown != NOT_STORED && storedOrigin != NOT_STORED
+                                          && lastKnown.hasSameRules(storedOrigin)))
+        {
+            return;
+        }
+        if (lastKnown == null && lastKnownOrigins.size() >= LAST_KNOWN_ORIGINS)
+        {
+            inBackground(lastKnownOriginsTrimPending, new Runnable()
             {
-                if (!getOriginsStore().contains(Constants.DEFAULT_ORIGIN_NAME))
-                {
-                    return null;
-                }
-                else
+                @Override
+                public void run()
                 {
-                    return getOriginsStore().retrieve(Constants.DEFAULT_ORIGIN_NAME);
+                    trimLastKnownOrigins();
                 }
-            }
+            });
+            return;
+        }
+        lastKnownOrigins.put(origin, storedOrigin);
+    }
 
-            return getOriginsStore().retrieve(origin);
+    private void trimLastKnownOrigins()
+    {
+        int toEvict = LAST_KNOWN_ORIGINS / 8;
+        Iterator<String> urls = lastKnownOrigins.keySet().iterator();
+        while (toEvict-- > 0 && urls.hasNext())
+        {
+            urls.next();
+            urls.remove();
         }
-        catch (ObjectStoreException ose)
+    }
+
+    /**
+     * Answers for an origin the store could not be asked about: with the last answer the store gave for
+     * it if any, otherwise as the failure policy says.
+     */
+    private CompiledOrigin storeUnavailable(String origin, ObjectStoreException ose)
+    {
+        CompiledOrigin lastKnown = lastKnownOrigins.get(origin);
+        if (lastKnown != null)
         {
-            logger.warn("Error searching origin " + origin + " in object store. Error: " + ose.getMessage());
-            return null;
+            statistics.staleOriginAnswer();
+            if (logger.isDebugEnabled())
+            {
+                logger.debug("Origins store unavailable, using the last known answer for origin " + origin + ". Error: " + ose.getMessage());
+            }
+            return lastKnown == NOT_STORED ? null : lastKnown;
+        }
+        statistics.failurePolicyAnswer();
+        if (logger.isDebugEnabled())
+        {
+            logger.debug("Origins store unavailable, applying " + originsStoreFailurePolicy + " to origin " + origin + ". Error: " + ose.getMessage());
         }
+        return originsStoreFailurePolicy == OriginsStoreFailurePolicy.FAIL_OPEN ? FAIL_OPEN_ORIGIN : null;
     }
 
     private String getObjectStoreName()
@@ -85,6 +301,21 @@ public class CorsConfig implements Initialisable, Disposable, MuleContextAware
     @Override
     public void initialise() throws InitialisationException
     {
+        try
+        {
+            if (rejectionStatus < 100 || rejectionStatus > 599 || rejectionDrainLimit < 0)
+            {
+                throw new IllegalArgumentException("Rejection status must be an HTTP status and its drain limit may not be negative, got "
+                                                   + rejectionStatus + " and " + rejectionDrainLimit);
+            }
+            preflightRateLimiter = newRateLimiter(preflightRateLimit);
+            rejectionRateLimiter = newRateLimiter(rejectionRateLimit);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new InitialisationException(e, this);
+        }
+
         boolean newObjectStore = false;
 
         //no object store configured.
@@ -93,37 +324,495 @@ public class CorsConfig implements Initialisable, Disposable, MuleContextAware
             this.originsStore = muleContext.getObjectStoreManager().getObjectStore(getObjectStoreName());
             newObjectStore = true;
         }
+        sharedStore = !newObjectStore;
 
         //setup all configured object stores.
-        if (this.origins == null)
+        storedOrigins = new ArrayList<Origin>(origins != null ? origins.size() : 0);
+        Set<String> storedKeys = null;
+        if (this.origins != null)
         {
-            return;
+            try
+            {
+                storedKeys = storeOrigins(newObjectStore);
+            }
+            catch (ObjectStoreException ose)
+            {
+                throw new InitialisationException(ose, this);
+            }
+        }
+
+        if (sharedStore)
+        {
+            initialiseOriginStoreGuard();
+            initialiseOriginStoreCache();
+        }
+        if (preflightCacheSize > 0 && !isPreflightCacheSupported())
+        {
+            logger.warn("Preflight cache disabled, changes to the origins store would not be noticed without an originsCacheSize and no expiry");
+        }
+
+        try
+        {
+            if (originsSnapshot != null)
+            {
+                snapshot = OriginSnapshot.open(originsSnapshot);
+                logger.info("Mapped " + snapshot.size() + " origins from snapshot " + originsSnapshot);
+            }
+            fileOrigins = originsFile != null ? OriginsFile.read(originsFile) : Collections.<Origin>emptyList();
+            publish(buildIndex(fileOrigins, storedKeys));
+            if (sharedStore)
+            {
+                originFilterEnabled = originIndex.getKnownOrigins() != null;
+                initialiseStoreMaintenance();
+            }
+            if (originsFile != null)
+            {
+                originsFileWatcher = new OriginsFileWatcher(originsFile, new OriginsFileWatcher.Listener()
+                {
+                    @Override
+                    public void fileChanged(File file)
+                    {
+                        reloadOriginsFile();
+                    }
+                });
+                originsFileWatcher.start();
+            }
+        }
+        catch (IOException e)
+        {
+            throw new InitialisationException(e, this);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new InitialisationException(e, this);
+        }
+        catch (ObjectStoreException ose)
+        {
+            throw new InitialisationException(ose, this);
+        }
+
+        //registered last, dispose is not called for a config that failed to initialise
+        registerStatistics();
+    }
+
+    /**
+     * Writes the configured origins to the store, keeping the ones a shared store already holds. When the
+     * store can list its keys they are read once up front instead of being queried origin by origin,
+     * which matters for large configurations on persistent stores. A store created for this configuration
+     * is left empty, lookups never reach it since the index answers for every configured origin.
+     *
+     * @return the keys the store held before, or null if it cannot list them or was not written.
+     */
+    private Set<String> storeOrigins(boolean newObjectStore) throws ObjectStoreException
+    {
+        if (newObjectStore)
+        {
+            storedOrigins.addAll(origins);
+            return null;
+        }
+        final Set<String> storedKeys = listStoredKeys();
+        for (Origin o : origins)
+        {
+            String url = o.getUrl();
+            if (storedKeys != null ? storedKeys.contains(url) : originsStore.contains(url))
+            {
+                //a shared store keeps precedence over the local configuration
+                Origin stored = retrieveStored(url);
+                if (stored != null)
+                {
+                    storedOrigins.add(stored);
+                    continue;
+                }
+            }
+            safeStore(o);
+            storedOrigins.add(o);
         }
+        return storedKeys;
+    }
 
+    /**
+     * @return the stored origin, or null if it was removed since the keys were listed.
+     */
+    private Origin retrieveStored(String url) throws ObjectStoreException
+    {
         try
         {
-            for (Origin o : origins)
+            return originsStore.retrieve(url);
+        }
+        catch (ObjectDoesNotExistException e)
+        {
+            return null;
+        }
+    }
+
+    private Set<String> listStoredKeys() throws ObjectStoreException
+    {
+        if (!(originsStore instanceof ListableObjectStore))
+        {
+            return null;
+        }
+        List<Serializable> keys = ((ListableObjectStore<Origin>) originsStore).allKeys();
+        Set<String> storedKeys = new HashSet<String>(Math.max(16, (int) (keys.size() / .75f) + 1));
+        for (Serializable key : keys)
+        {
+            if (key instanceof String)
             {
+                storedKeys.add((String) key);
+            }
+        }
+        return storedKeys;
+    }
 
-                if (originsStore.contains(o.getUrl()))
+    private void initialiseOriginStoreGuard() throws InitialisationException
+    {
+        try
+        {
+            originStoreGuard = new OriginStoreGuard(originsStore, originsStoreTimeout, originsStoreFailureThreshold, originsStoreOpenTime,
+                                                    new Runnable()
+            {
+                @Override
+                public void run()
                 {
-                    if (newObjectStore)
+                    //decisions taken from fallback answers, such as cached preflight responses, are stale now
+                    originsVersion.incrementAndGet();
+                }
+            });
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new InitialisationException(e, this);
+        }
+    }
+
+    private void initialiseOriginStoreCache() throws InitialisationException
+    {
+        try
+        {
+            if (origins != null && (originsCacheSize > 0 || originFilterFalsePositiveRate > 0))
+            {
+                //configured origins may have just been added to the store, other nodes caching or filtering its origins must notice
+                OriginStoreCache.writeVersion(originsStore);
+            }
+        }
+        catch (ObjectStoreException ose)
+        {
+            throw new InitialisationException(ose, this);
+        }
+        if (originsCacheSize > 0)
+        {
+            try
+            {
+                originStoreCache = new OriginStoreCache(originStoreGuard, originsCacheSize, originsCacheCheckInterval, originsCacheTtl,
+                                                        originsCacheNegativeTtl, originsCacheRefreshAhead, new Runnable()
+                {
+                    @Override
+                    public void run()
                     {
-                        originsStore.remove(o.getUrl());
+                        //values derived from stored origins, such as cached preflight responses, are stale now
+                        originsVersion.incrementAndGet();
+                        reloadStoredOrigins();
                     }
-                    else
+                });
+            }
+            catch (IllegalArgumentException e)
+            {
+                throw new InitialisationException(e, this);
+            }
+        }
+    }
+
+    /**
+     * Tells every node sharing the origins store that its origins were added, removed or updated, so
+     * that they drop their cached copies. Must be called after changing the store directly.
+     */
+    public void originsStoreChanged() throws ObjectStoreException
+    {
+        OriginStoreCache.writeVersion(originsStore);
+        lastKnownOrigins.clear();
+        final OriginStoreCache cache = originStoreCache;
+        if (cache != null)
+        {
+            cache.invalidate();
+        }
+        reloadStoredOrigins();
+    }
+
+    /**
+     * Sets up the thread that keeps the state derived from the shared store off the request path, started
+     * on its first task. When configured origins or the origin filter are derived from the store without a
+     * near cache to notice that it changed, it also polls the version stamp of the store once per check
+     * interval.
+     */
+    private void initialiseStoreMaintenance()
+    {
+        storeMaintenance = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "cors-origins-store");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        if ((origins != null || originFilterEnabled) && originStoreCache == null)
+        {
+            polledStoreVersion = readStoreVersion();
+            storeMaintenance.scheduleWithFixedDelay(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    Serializable version = readStoreVersion();
+                    if (version == null ? polledStoreVersion != null : !version.equals(polledStoreVersion))
                     {
-                        continue;
+                        polledStoreVersion = version;
+                        reloadStoredOriginsNow();
                     }
                 }
-                safeStore(o);
+            }, Math.max(1, originsCacheCheckInterval), Math.max(1, originsCacheCheckInterval), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Serializable readStoreVersion()
+    {
+        try
+        {
+            return originStoreGuard.retrieve(OriginStoreCache.VERSION_KEY);
+        }
+        catch (ObjectStoreException ose)
+        {
+            logger.debug("Unable to read origins version from object store. Error: " + ose.getMessage());
+            return polledStoreVersion;
+        }
+    }
+
+    /**
+     * Reads the configured origins again from the shared store and reindexes them in the background, along
+     * with the origin filter, so that origins other nodes updated or removed are no longer answered from
+     * the index and origins they added are no longer refused. Requests made meanwhile keep using the
+     * current index.
+     */
+    private void reloadStoredOrigins()
+    {
+        if (origins == null && !originFilterEnabled)
+        {
+            return;
+        }
+        inBackground(storedOriginsReloadPending, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                reloadStoredOriginsNow();
+            }
+        });
+    }
+
+    /**
+     * Runs the task on the store maintenance thread unless it is already pending there.
+     */
+    private void inBackground(final AtomicBoolean pending, final Runnable task)
+    {
+        final ScheduledExecutorService maintenance = storeMaintenance;
+        if (maintenance == null || !pending.compareAndSet(false, true))
+        {
+            return;
+        }
+        try
+        {
+            maintenance.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    //requests made from now on need another run
+                    pending.set(false);
+                    task.run();
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            //disposed
+            pending.set(false);
+        }
+    }
+
+    private void reloadStoredOriginsNow()
+    {
+        synchronized (indexLock)
+        {
+            try
+            {
+                if (origins != null)
+                {
+                    storedOrigins = readStoredOrigins();
+                }
+                publish(buildIndex(fileOrigins, null));
+            }
+            catch (ObjectStoreException ose)
+            {
+                logger.warn("Unable to read the origins store, keeping the current origins. Error: " + ose.getMessage());
+            }
+            catch (IllegalArgumentException e)
+            {
+                logger.warn("Invalid origins in the origins store, keeping the current origins. Error: " + e.getMessage());
             }
         }
+    }
+
+    /**
+     * @return the configured origins as the shared store holds them now, leaving out the ones it no longer
+     * holds.
+     */
+    private List<Origin> readStoredOrigins() throws ObjectStoreException
+    {
+        List<Origin> current = new ArrayList<Origin>(origins.size());
+        for (Origin o : origins)
+        {
+            Serializable value = originStoreGuard.retrieve(o.getUrl());
+            if (value instanceof Origin)
+            {
+                current.add((Origin) value);
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Builds a new snapshot of the origins from the file and swaps it in. Requests being processed keep
+     * using the previous snapshot; if the file cannot be read the previous snapshot stays in place.
+     */
+    void reloadOriginsFile()
+    {
+        try
+        {
+            List<Origin> reloaded = OriginsFile.read(originsFile);
+            synchronized (indexLock)
+            {
+                publish(buildIndex(reloaded, null));
+                fileOrigins = reloaded;
+            }
+            logger.info("Reloaded " + reloaded.size() + " origins from " + originsFile);
+        }
+        catch (IOException e)
+        {
+            logger.error("Unable to read origins from " + originsFile + ", keeping the current origins. Error: " + e.getMessage());
+        }
+        catch (IllegalArgumentException e)
+        {
+            logger.error("Invalid origins in " + originsFile + ", keeping the current origins. Error: " + e.getMessage());
+        }
         catch (ObjectStoreException ose)
         {
-            throw new InitialisationException(ose, this);
+            logger.error("Unable to list the origins store, keeping the current origins. Error: " + ose.getMessage());
+        }
+    }
+
+    /**
+     * Indexes the configured origins together with the ones read from the origins file, which win when
+     * both define the same url. The wildcard and default origins of the snapshot are indexed too, with
+     * the lowest precedence.
+     *
+     * @param storedKeys keys of the store listed at startup, or null to list them again.
+     */
+    private OriginIndex buildIndex(List<Origin> fileOrigins, Set<String> storedKeys) throws ObjectStoreException
+    {
+        List<Origin> snapshotOrigins = snapshot != null ? snapshot.getPatternOrigins() : Collections.<Origin>emptyList();
+        Map<String, Origin> merged = new LinkedHashMap<String, Origin>((int) ((snapshotOrigins.size() + storedOrigins.size() + fileOrigins.size()) / .75f) + 1);
+        for (Origin o : snapshotOrigins)
+        {
+            merged.put(o.getUrl(), o);
+        }
+        for (Origin o : storedOrigins)
+        {
+            merged.put(o.getUrl(), o);
+        }
+        for (Origin o : fileOrigins)
+        {
+            merged.put(o.getUrl(), o);
+        }
+        OriginIndex index = new OriginIndex(new ArrayList<Origin>(merged.values()));
+        if (sharedStore && originFilterFalsePositiveRate > 0)
+        {
+            index = index.withKnownOrigins(buildKnownOrigins(index.getCompiledOrigins(), storedKeys != null ? storedKeys : listStoredKeys()));
+        }
+        return index;
+    }
+
+    /**
+     * Builds a filter over the configured origins and every origin held by the store, so that lookups
+     * of unknown origins do not reach the store. Returns null if the store cannot list its keys.
+     */
+    private OriginBloomFilter buildKnownOrigins(Collection<CompiledOrigin> configuredOrigins, Set<String> storedKeys)
+    {
+        if (storedKeys == null)
+        {
+            logger.warn("Origins store cannot list its keys, the origin filter is disabled");
+            return null;
+        }
+        Set<String> urls = new HashSet<String>(storedKeys);
+        for (CompiledOrigin o : configuredOrigins)
+        {
+            urls.add(o.getUrl());
+        }
+
+        OriginBloomFilter filter = new OriginBloomFilter(urls, originFilterFalsePositiveRate);
+        if (logger.isInfoEnabled())
+        {
+            logger.info("Built origin filter for " + filter.getInsertions() + " origins using " + filter.getMemoryBytes()
+                        + " bytes, expected false positive rate " + filter.getExpectedFalsePositiveRate());
+        }
+        return filter;
+    }
+
+    private void registerStatistics()
+    {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            ObjectName objectName = new ObjectName(STATISTICS_DOMAIN + ":type=CorsStatistics,app=" + ObjectName.quote(muleContext.getConfiguration().getId())
+                                                   + ",config=" + ObjectName.quote(name != null ? name : Integer.toHexString(System.identityHashCode(this))));
+            mBeanServer.registerMBean(statistics, objectName);
+            statisticsName = objectName;
+        }
+        catch (JMException e)
+        {
+            logger.warn("Unable to register CORS statistics MBean. Error: " + e.getMessage());
+        }
+    }
+
+    private void unregisterStatistics()
+    {
+        if (statisticsName == null)
+        {
+            return;
+        }
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(statisticsName);
+        }
+        catch (JMException e)
+        {
+            logger.warn("Unable to unregister CORS statistics MBean. Error: " + e.getMessage());
         }
+        statisticsName = null;
+    }
+
+    private void publish(OriginIndex index)
+    {
+        originIndex = index;
+        originsVersion.incrementAndGet();
+    }
 
+    /**
+     * @return a number that changes every time the configured origins change, so that values derived
+     * from them can be invalidated.
+     */
+    public long getOriginsVersion()
+    {
+        return originsVersion.get();
     }
 
     private void safeStore(Origin o) throws ObjectStoreException {
@@ -140,6 +829,17 @@ public class CorsConfig implements Initialisable, Disposable, MuleContextAware
     @Override
     public void dispose()
     {
+        if (originsFileWatcher != null)
+        {
+            originsFileWatcher.stop();
+            originsFileWatcher = null;
+        }
+        if (storeMaintenance != null)
+        {
+            storeMaintenance.shutdownNow();
+            storeMaintenance = null;
+        }
+        originFilterEnabled = false;
         if (this.originsStore != null)
         {
             try
@@ -152,6 +852,20 @@ public class CorsConfig implements Initialisable, Disposable, MuleContextAware
             }
             this.originsStore = null;
         }
+        if (originStoreCache != null)
+        {
+            originStoreCache.dispose();
+            originStoreCache = null;
+        }
+        if (originStoreGuard != null)
+        {
+            originStoreGuard.dispose();
+            originStoreGuard = null;
+        }
+        lastKnownOrigins.clear();
+        unregisterStatistics();
+        snapshot = null;
+        publish(OriginIndex.EMPTY);
     }
 
     @Override
@@ -160,6 +874,29 @@ public class CorsConfig implements Initialisable, Disposable, MuleContextAware
         this.muleContext = muleContext;
     }
 
+    @Override
+    public void setBeanName(String name)
+    {
+        this.name = name;
+    }
+
+    /**
+     * @return the decision counters of the filters using this config, also registered as an MBean.
+     */
+    public CorsStatistics getStatistics()
+    {
+        return statistics;
+    }
+
+    /**
+     * @return the origins currently configured, wildcard patterns included. Origins only present in a
+     * shared origins store are not part of it.
+     */
+    public Collection<CompiledOrigin> getCompiledOrigins()
+    {
+        return originIndex.getCompiledOrigins();
+    }
+
     public String getStorePrefix()
     {
         return storePrefix;
@@ -170,6 +907,334 @@ public class CorsConfig implements Initialisable, Disposable, MuleContextAware
         this.storePrefix = storePrefix;
     }
 
+    public int getPreflightCacheSize()
+    {
+        return preflightCacheSize;
+    }
+
+    public void setPreflightCacheSize(int preflightCacheSize)
+    {
+        this.preflightCacheSize = preflightCacheSize;
+    }
+
+    /**
+     * @return whether every change to the origins shows in {@link #getOriginsVersion()}, so that preflight
+     * decisions may be cached. A shared store only tells about its changes through the near cache, and not
+     * even then when cached origins simply expire.
+     */
+    public boolean isPreflightCacheSupported()
+    {
+        return !sharedStore || (originsCacheSize > 0 && originsCacheTtl == 0 && originsCacheNegativeTtl == 0);
+    }
+
+    public double getOriginFilterFalsePositiveRate()
+    {
+        return originFilterFalsePositiveRate;
+    }
+
+    public void setOriginFilterFalsePositiveRate(double originFilterFalsePositiveRate)
+    {
+        this.originFilterFalsePositiveRate = originFilterFalsePositiveRate;
+    }
+
+    /**
+     * @return the filter used to skip store lookups of unknown origins, or null if it is disabled.
+     */
+    public OriginBloomFilter getOriginFilter()
+    {
+        return originIndex.getKnownOrigins();
+    }
+
+    public int getOriginsCacheSize()
+    {
+        return originsCacheSize;
+    }
+
+    /**
+     * @param originsCacheSize maximum number of origins of a shared origins store kept locally, zero
+     *                         disables the cache.
+     */
+    public void setOriginsCacheSize(int originsCacheSize)
+    {
+        this.originsCacheSize = originsCacheSize;
+    }
+
+    public long getOriginsCacheCheckInterval()
+    {
+        return originsCacheCheckInterval;
+    }
+
+    public void setOriginsCacheCheckInterval(long originsCacheCheckInterval)
+    {
+        this.originsCacheCheckInterval = originsCacheCheckInterval;
+    }
+
+    public long getOriginsCacheTtl()
+    {
+        return originsCacheTtl;
+    }
+
+    /**
+     * @param originsCacheTtl milliseconds an origin of the shared store is kept locally, zero to keep it
+     *                        until the store changes.
+     */
+    public void setOriginsCacheTtl(long originsCacheTtl)
+    {
+        this.originsCacheTtl = originsCacheTtl;
+    }
+
+    public long getOriginsCacheNegativeTtl()
+    {
+        return originsCacheNegativeTtl;
+    }
+
+    /**
+     * @param originsCacheNegativeTtl milliseconds an origin not found in the shared store is remembered,
+     *                                zero for the same time as the ones found.
+     */
+    public void setOriginsCacheNegativeTtl(long originsCacheNegativeTtl)
+    {
+        this.originsCacheNegativeTtl = originsCacheNegativeTtl;
+    }
+
+    public long getOriginsCacheRefreshAhead()
+    {
+        return originsCacheRefreshAhead;
+    }
+
+    /**
+     * @param originsCacheRefreshAhead milliseconds before expiring in which a cached origin that is read
+     *                                 gets reloaded in the background, zero to disable.
+     */
+    public void setOriginsCacheRefreshAhead(long originsCacheRefreshAhead)
+    {
+        this.originsCacheRefreshAhead = originsCacheRefreshAhead;
+    }
+
+    /**
+     * @return the local copy of the shared origins store, or null if it is disabled.
+     */
+    public OriginStoreCache getOriginStoreCache()
+    {
+        return originStoreCache;
+    }
+
+    /**
+     * @return the guard reading the shared origins store, or null if there is no shared store.
+     */
+    public OriginStoreGuard getOriginStoreGuard()
+    {
+        return originStoreGuard;
+    }
+
+    public long getOriginsStoreTimeout()
+    {
+        return originsStoreTimeout;
+    }
+
+    /**
+     * @param originsStoreTimeout milliseconds a lookup in the shared origins store may take, zero to wait
+     *                            for as long as the store takes.
+     */
+    public void setOriginsStoreTimeout(long originsStoreTimeout)
+    {
+        this.originsStoreTimeout = originsStoreTimeout;
+    }
+
+    public int getOriginsStoreFailureThreshold()
+    {
+        return originsStoreFailureThreshold;
+    }
+
+    /**
+     * @param originsStoreFailureThreshold failed lookups in a row after which the shared origins store is
+     *                                     no longer queried for the open time, zero to always query it.
+     */
+    public void setOriginsStoreFailureThreshold(int originsStoreFailureThreshold)
+    {
+        this.originsStoreFailureThreshold = originsStoreFailureThreshold;
+    }
+
+    public long getOriginsStoreOpenTime()
+    {
+        return originsStoreOpenTime;
+    }
+
+    public void setOriginsStoreOpenTime(long originsStoreOpenTime)
+    {
+        this.originsStoreOpenTime = originsStoreOpenTime;
+    }
+
+    public OriginsStoreFailurePolicy getOriginsStoreFailurePolicy()
+    {
+        return originsStoreFailurePolicy;
+    }
+
+    /**
+     * @param originsStoreFailurePolicy how origins are resolved while the shared origins store cannot be
+     *                                  read and there is no earlier answer for them.
+     */
+    public void setOriginsStoreFailurePolicy(OriginsStoreFailurePolicy originsStoreFailurePolicy)
+    {
+        this.originsStoreFailurePolicy = originsStoreFailurePolicy;
+    }
+
+    private RateLimiter newRateLimiter(int permitsPerSecond)
+    {
+        if (permitsPerSecond == 0)
+        {
+            return null;
+        }
+        return new RateLimiter(permitsPerSecond, rateLimitBurst > 0 ? rateLimitBurst : permitsPerSecond, RATE_LIMIT_KEYS);
+    }
+
+    public RejectionPolicy getRejectionPolicy()
+    {
+        return rejectionPolicy;
+    }
+
+    /**
+     * @param rejectionPolicy what is done with the response and the inbound payload of requests that are not allowed.
+     */
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy)
+    {
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    public int getRejectionStatus()
+    {
+        return rejectionStatus;
+    }
+
+    /**
+     * @param rejectionStatus status of the response to requests that are not allowed, unless the policy is
+     *                        {@link RejectionPolicy#FLOW}.
+     */
+    public void setRejectionStatus(int rejectionStatus)
+    {
+        this.rejectionStatus = rejectionStatus;
+    }
+
+    public long getRejectionDrainLimit()
+    {
+        return rejectionDrainLimit;
+    }
+
+    /**
+     * @param rejectionDrainLimit bytes of the payload of a request that is not allowed that are read and discarded
+     *                            with {@link RejectionPolicy#DRAIN} before closing it.
+     */
+    public void setRejectionDrainLimit(long rejectionDrainLimit)
+    {
+        this.rejectionDrainLimit = rejectionDrainLimit;
+    }
+
+    public int getPreflightRateLimit()
+    {
+        return preflightRateLimit;
+    }
+
+    /**
+     * @param preflightRateLimit preflights per second let through for each origin, zero for no limit.
+     */
+    public void setPreflightRateLimit(int preflightRateLimit)
+    {
+        this.preflightRateLimit = preflightRateLimit;
+    }
+
+    public int getRejectionRateLimit()
+    {
+        return rejectionRateLimit;
+    }
+
+    /**
+     * @param rejectionRateLimit requests per second that may be rejected for each origin before further requests
+     *                           from it are refused without looking it up, zero for no limit.
+     */
+    public void setRejectionRateLimit(int rejectionRateLimit)
+    {
+        this.rejectionRateLimit = rejectionRateLimit;
+    }
+
+    public int getRateLimitBurst()
+    {
+        return rateLimitBurst;
+    }
+
+    /**
+     * @param rateLimitBurst requests let through at once by a rate limit after a quiet period, zero for one
+     *                       second worth of them.
+     */
+    public void setRateLimitBurst(int rateLimitBurst)
+    {
+        this.rateLimitBurst = rateLimitBurst;
+    }
+
+    public boolean isRateLimitByClient()
+    {
+        return rateLimitByClient;
+    }
+
+    /**
+     * @param rateLimitByClient whether rate limits apply to each client address of an origin separately.
+     */
+    public void setRateLimitByClient(boolean rateLimitByClient)
+    {
+        this.rateLimitByClient = rateLimitByClient;
+    }
+
+    /**
+     * @return the limit of preflights, or null if there is none.
+     */
+    public RateLimiter getPreflightRateLimiter()
+    {
+        return preflightRateLimiter;
+    }
+
+    /**
+     * @return the limit of rejected requests, or null if there is none.
+     */
+    public RateLimiter getRejectionRateLimiter()
+    {
+        return rejectionRateLimiter;
+    }
+
+    public File getOriginsFile()
+    {
+        return originsFile;
+    }
+
+    /**
+     * @param originsFile properties file with additional origins, see {@link OriginsFile}. It is watched
+     *                    and reloaded whenever it changes.
+     */
+    public void setOriginsFile(File originsFile)
+    {
+        this.originsFile = originsFile;
+    }
+
+    public File getOriginsSnapshot()
+    {
+        return originsSnapshot;
+    }
+
+    /**
+     * @param originsSnapshot snapshot written by {@link OriginSnapshotWriter}, memory mapped and queried
+     *                        for the origins that are not configured otherwise.
+     */
+    public void setOriginsSnapshot(File originsSnapshot)
+    {
+        this.originsSnapshot = originsSnapshot;
+    }
+
+    /**
+     * @return the mapped origins snapshot, or null if none is set.
+     */
+    public OriginSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
     public List<Origin> getOrigins()
     {
         return origins;
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+/**
+ * Bit flags for the standard HTTP methods, so that a set of allowed methods fits in an int and
+ * checking a method is a single AND.
+ */
+public final class HttpMethods
+{
+
+    public static final int GET = 1;
+    public static final int HEAD = 1 << 1;
+    public static final int POST = 1 << 2;
+    public static final int PUT = 1 << 3;
+    public static final int DELETE = 1 << 4;
+    public static final int CONNECT = 1 << 5;
+    public static final int OPTIONS = 1 << 6;
+    public static final int TRACE = 1 << 7;
+    public static final int PATCH = 1 << 8;
+
+    private HttpMethods()
+    {
+    }
+
+    /**
+     * Maps a method name, which is case sensitive, to its flag by looking at its length and first
+     * character before comparing it, so no hash of the name is computed.
+     *
+     * @return the flag of the method, or 0 if it is not a standard method.
+     */
+    public static int bit(String method)
+    {
+        if (method == null)
+        {
+            return 0;
+        }
+        switch (method.length())
+        {
+            case 3:
+                if (method.charAt(0) == 'G')
+                {
+                    return is(method, "GET", GET);
+                }
+                return is(method, "PUT", PUT);
+            case 4:
+                if (method.charAt(0) == 'H')
+                {
+                    return is(method, "HEAD", HEAD);
+                }
+                return is(method, "POST", POST);
+            case 5:
+                if (method.charAt(0) == 'P')
+                {
+                    return is(method, "PATCH", PATCH);
+                }
+                return is(method, "TRACE", TRACE);
+            case 6:
+                return is(method, "DELETE", DELETE);
+            case 7:
+                if (method.charAt(0) == 'O')
+                {
+                    return is(method, "OPTIONS", OPTIONS);
+                }
+                return is(method, "CONNECT", CONNECT);
+            default:
+                return 0;
+        }
+    }
+
+    private static int is(String method, String name, int bit)
+    {
+        return method.equals(name) ? bit : 0;
+    }
+}
@@ -19,8 +19,23 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * An allowed origin and its access rules.
+ * <p/>
+ * Origins are serialized in the compact form of {@link SerializedOrigin}. Origins stored in the default
+ * form by earlier versions of the module can still be read; setting the {@link #LEGACY_SERIALIZATION_PROPERTY}
+ * system property keeps writing that form, for clusters where nodes running an earlier version share
+ * the origins store.
+ */
 public class Origin implements Serializable {
 
+    public static final String LEGACY_SERIALIZATION_PROPERTY = "mule.cors.legacyOriginSerialization";
+
+    //the default form of earlier versions is only readable as long as this stays the same
+    private static final long serialVersionUID = 3217886622474928562L;
+
+    private static final boolean LEGACY_SERIALIZATION = Boolean.getBoolean(LEGACY_SERIALIZATION_PROPERTY);
+
     private String url;
 
     private List<String> methods = new ArrayList<String>();
@@ -70,4 +85,8 @@ public class Origin implements Serializable {
     public void setAccessControlMaxAge(Long accessControlMaxAge) {
         this.accessControlMaxAge = accessControlMaxAge;
     }
+
+    private Object writeReplace() {
+        return LEGACY_SERIALIZATION ? this : new SerializedOrigin(this);
+    }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import java.util.Collection;
+
+/**
+ * Immutable Bloom filter over origin urls. A negative answer means the origin is definitely not known,
+ * so the origins store does not need to be queried for it.
+ */
+public final class OriginBloomFilter
+{
+
+    private static final double LN2 = Math.log(2);
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashFunctions;
+    private final int insertions;
+
+    public OriginBloomFilter(Collection<String> origins, double falsePositiveRate)
+    {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1)
+        {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1, got " + falsePositiveRate);
+        }
+        int expected = Math.max(1, origins.size());
+        long optimalBits = (long) Math.ceil(-expected * Math.log(falsePositiveRate) / (LN2 * LN2));
+        this.bits = new long[(int) Math.max(1, (optimalBits + 63) >>> 6)];
+        this.bitCount = bits.length * 64L;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitCount / expected * LN2));
+
+        int count = 0;
+        for (String origin : origins)
+        {
+            if (origin != null)
+            {
+                put(origin);
+                count++;
+            }
+        }
+        this.insertions = count;
+    }
+
+    private void put(String origin)
+    {
+        long hash = hash(origin);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashFunctions; i++)
+        {
+            long index = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+    }
+
+    /**
+     * @return false if the origin is definitely not known, true if it might be.
+     */
+    public boolean mightContain(String origin)
+    {
+        if (origin == null)
+        {
+            return false;
+        }
+        long hash = hash(origin);
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashFunctions; i++)
+        {
+            long index = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 64 bit FNV-1a over the characters of the value, followed by a final avalanche step.
+     */
+    private static long hash(String value)
+    {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++)
+        {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return the probability of a false positive given the number of origins actually added.
+     */
+    public double getExpectedFalsePositiveRate()
+    {
+        return Math.pow(1 - Math.exp(-(double) hashFunctions * insertions / bitCount), hashFunctions);
+    }
+
+    public long getMemoryBytes()
+    {
+        return bits.length * 8L;
+    }
+
+    public long getBitCount()
+    {
+        return bitCount;
+    }
+
+    public int getHashFunctions()
+    {
+        return hashFunctions;
+    }
+
+    public int getInsertions()
+    {
+        return insertions;
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import org.mule.modules.cors.Constants;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the configured origins, indexed by url. Instances are built once and
+ * then only read, so they can be shared between request threads without any locking.
+ * <p/>
+ * Wildcard subdomain patterns are kept apart in a {@link WildcardOriginTrie}; an exact url always
+ * takes precedence over them.
+ */
+public final class OriginIndex
+{
+
+    public static final OriginIndex EMPTY = new OriginIndex(Collections.<Origin>emptyList());
+
+    private final Map<String, CompiledOrigin> origins;
+    private final List<CompiledOrigin> compiledOrigins;
+    private final WildcardOriginTrie patterns;
+    private final CompiledOrigin defaultOrigin;
+    private final OriginBloomFilter knownOrigins;
+
+    public OriginIndex(Collection<Origin> origins)
+    {
+        this(origins, null);
+    }
+
+    /**
+     * @param knownOrigins filter over every origin that may exist in the origins store, or null if the
+     *                     store has to be queried for any unknown origin.
+     */
+    public OriginIndex(Collection<Origin> origins, OriginBloomFilter knownOrigins)
+    {
+        Map<String, CompiledOrigin> index = new HashMap<String, CompiledOrigin>(Math.max(16, (int) (origins.size() / 0.75f) + 1));
+        List<CompiledOrigin> compiled = new ArrayList<CompiledOrigin>(origins.size());
+        WildcardOriginTrie.Builder patternsBuilder = new WildcardOriginTrie.Builder();
+        OriginPolicy.Pool policies = new OriginPolicy.Pool();
+        for (Origin origin : origins)
+        {
+            CompiledOrigin compiledOrigin = CompiledOrigin.compile(origin, policies);
+            compiled.add(compiledOrigin);
+            if (compiledOrigin.isPattern())
+            {
+                patternsBuilder.add(compiledOrigin);
+            }
+            else
+            {
+                index.put(origin.getUrl(), compiledOrigin);
+            }
+        }
+        this.origins = Collections.unmodifiableMap(index);
+        this.compiledOrigins = Collections.unmodifiableList(compiled);
+        this.patterns = patternsBuilder.build();
+        this.defaultOrigin = index.get(Constants.DEFAULT_ORIGIN_NAME);
+        this.knownOrigins = knownOrigins;
+    }
+
+    private OriginIndex(OriginIndex index, OriginBloomFilter knownOrigins)
+    {
+        this.origins = index.origins;
+        this.compiledOrigins = index.compiledOrigins;
+        this.patterns = index.patterns;
+        this.defaultOrigin = index.defaultOrigin;
+        this.knownOrigins = knownOrigins;
+    }
+
+    /**
+     * @return an index of the same origins with another filter over the origins store, sharing everything else.
+     */
+    public OriginIndex withKnownOrigins(OriginBloomFilter knownOrigins)
+    {
+        return new OriginIndex(this, knownOrigins);
+    }
+
+    /**
+     * @return the origin configured for the exact given url, or null.
+     */
+    public CompiledOrigin getExact(String url)
+    {
+        return url == null ? null : origins.get(url);
+    }
+
+    /**
+     * @return the most specific wildcard pattern matching the given url, or null.
+     */
+    public CompiledOrigin getPattern(String url)
+    {
+        return patterns.find(url);
+    }
+
+    /**
+     * @return the origin configured for the given url, either exactly or through a wildcard pattern, or null.
+     */
+    public CompiledOrigin get(String url)
+    {
+        CompiledOrigin origin = getExact(url);
+        return origin != null ? origin : patterns.find(url);
+    }
+
+    /**
+     * @return the origin configured for the given url, falling back to the default (*) origin.
+     */
+    public CompiledOrigin find(String url)
+    {
+        CompiledOrigin origin = get(url);
+        return origin != null ? origin : defaultOrigin;
+    }
+
+    public CompiledOrigin getDefaultOrigin()
+    {
+        return defaultOrigin;
+    }
+
+    /**
+     * @return every origin of the snapshot, wildcard patterns included, in configuration order.
+     */
+    public List<CompiledOrigin> getCompiledOrigins()
+    {
+        return compiledOrigins;
+    }
+
+    public int size()
+    {
+        return origins.size();
+    }
+
+    /**
+     * @return false if the url is definitely not present in the origins store.
+     */
+    public boolean mightBeStored(String url)
+    {
+        return knownOrigins == null || knownOrigins.mightContain(url);
+    }
+
+    public OriginBloomFilter getKnownOrigins()
+    {
+        return knownOrigins;
+    }
+
+    public boolean hasPatterns()
+    {
+        return !patterns.isEmpty();
+    }
+}
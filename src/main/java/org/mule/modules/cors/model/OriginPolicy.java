@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import org.mule.modules.cors.HeaderTokenizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Immutable, precompiled form of the access rules of an {@link Origin}. The values of the
+ * response headers are built once when the policy is compiled so they can be handed to the
+ * outbound properties of every response as they are.
+ */
+public final class OriginPolicy
+{
+
+    public static final String SEPARATOR = ", ";
+
+    private final List<String> methods;
+    private final List<String> headers;
+    private final List<String> exposeHeaders;
+    private final Long accessControlMaxAge;
+    private final CaseInsensitiveNameSet supportedHeaders;
+    private final boolean anyHeader;
+
+    //standard methods as HttpMethods flags, anything else in the extension set
+    private final int methodMask;
+    private final Set<String> extensionMethods;
+
+    private final String allowMethodsValue;
+    private final String allowHeadersValue;
+    private final String exposeHeadersValue;
+
+    private final HeaderTokenizer.TokenMatcher supportedHeaderMatcher = new HeaderTokenizer.TokenMatcher()
+    {
+        @Override
+        public boolean matches(String value, int start, int end)
+        {
+            return isSupportedHeader(value, start, end);
+        }
+    };
+
+    private OriginPolicy(List<String> methods, List<String> headers, List<String> exposeHeaders, Long accessControlMaxAge,
+                         boolean anyHeader)
+    {
+        this.methods = methods;
+        this.headers = headers;
+        this.exposeHeaders = exposeHeaders;
+        this.accessControlMaxAge = accessControlMaxAge;
+        this.supportedHeaders = new CaseInsensitiveNameSet(headers);
+        this.anyHeader = anyHeader;
+
+        int mask = 0;
+        Set<String> extensions = new HashSet<String>();
+        for (String method : methods)
+        {
+            int bit = HttpMethods.bit(method);
+            if (bit != 0)
+            {
+                mask |= bit;
+            }
+            else if (method != null)
+            {
+                extensions.add(method);
+            }
+        }
+        this.methodMask = mask;
+        this.extensionMethods = extensions.isEmpty() ? Collections.<String>emptySet() : Collections.unmodifiableSet(extensions);
+        this.allowMethodsValue = joinOrNull(methods);
+        this.allowHeadersValue = joinOrNull(headers);
+        this.exposeHeadersValue = joinOrNull(exposeHeaders);
+    }
+
+    public static OriginPolicy compile(Origin origin)
+    {
+        return new OriginPolicy(immutableCopy(origin.getMethods()), immutableCopy(origin.getHeaders()),
+                                immutableCopy(origin.getExposeHeaders()), origin.getAccessControlMaxAge(), false);
+    }
+
+    /**
+     * @return a policy allowing the given methods and any request header. Configured origins never get one,
+     * a {@code *} among their headers is just another header name; it is only used when the origins store
+     * fails open.
+     */
+    static OriginPolicy anyHeader(List<String> methods)
+    {
+        return new OriginPolicy(immutableCopy(methods), Collections.<String>emptyList(), Collections.<String>emptyList(), null, true);
+    }
+
+    /**
+     * Compiles origins into policies, handing out the same instance for every origin with the same
+     * methods, headers, exposed headers and max age. Configurations with many origins usually have
+     * few distinct rules, so the origins end up sharing a handful of policies. Not thread safe, it is
+     * meant to be used while building an index.
+     */
+    public static final class Pool
+    {
+
+        private final Map<List<Object>, OriginPolicy> policies = new HashMap<List<Object>, OriginPolicy>();
+
+        public OriginPolicy compile(Origin origin)
+        {
+            OriginPolicy policy = policies.get(key(origin.getMethods(), origin.getHeaders(), origin.getExposeHeaders(),
+                                                   origin.getAccessControlMaxAge()));
+            if (policy == null)
+            {
+                policy = OriginPolicy.compile(origin);
+                //keyed on the copies of the policy, the lists of the origin may still change
+                policies.put(key(policy.methods, policy.headers, policy.exposeHeaders, policy.accessControlMaxAge), policy);
+            }
+            return policy;
+        }
+
+        /**
+         * @return the number of distinct policies compiled so far.
+         */
+        public int size()
+        {
+            return policies.size();
+        }
+
+        private static List<Object> key(List<String> methods, List<String> headers, List<String> exposeHeaders, Long accessControlMaxAge)
+        {
+            return Arrays.<Object>asList(nullToEmpty(methods), nullToEmpty(headers), nullToEmpty(exposeHeaders), accessControlMaxAge);
+        }
+
+        private static List<String> nullToEmpty(List<String> values)
+        {
+            return values != null ? values : Collections.<String>emptyList();
+        }
+    }
+
+    private static List<String> immutableCopy(List<String> values)
+    {
+        if (values == null || values.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<String>(values));
+    }
+
+    private static String joinOrNull(List<String> values)
+    {
+        return values.isEmpty() ? null : StringUtils.join(values, SEPARATOR);
+    }
+
+    public boolean hasMethods()
+    {
+        return !methods.isEmpty();
+    }
+
+    public boolean isSupportedMethod(String method)
+    {
+        int bit = HttpMethods.bit(method);
+        if (bit != 0)
+        {
+            return (methodMask & bit) != 0;
+        }
+        return method != null && !extensionMethods.isEmpty() && extensionMethods.contains(method);
+    }
+
+    public boolean isSupportedHeader(String header)
+    {
+        return anyHeader || supportedHeaders.contains(header);
+    }
+
+    /**
+     * @return whether the header name found between start and end of value is supported, ignoring case.
+     */
+    public boolean isSupportedHeader(String value, int start, int end)
+    {
+        return anyHeader || supportedHeaders.contains(value, start, end);
+    }
+
+    /**
+     * @return whether every header listed in an Access-Control-Request-Headers value is supported.
+     */
+    public boolean isSupportedRequestHeaders(String requestHeaders)
+    {
+        return anyHeader || HeaderTokenizer.allMatch(requestHeaders, supportedHeaderMatcher);
+    }
+
+    /**
+     * @return whether any request header is allowed, in which case preflight responses list the requested
+     * headers as they are.
+     */
+    public boolean isAnyHeaderSupported()
+    {
+        return anyHeader;
+    }
+
+    /**
+     * @return whether the other policy allows and exposes the same as this one.
+     */
+    boolean hasSameRules(OriginPolicy other)
+    {
+        return anyHeader == other.anyHeader && methods.equals(other.methods) && headers.equals(other.headers)
+               && exposeHeaders.equals(other.exposeHeaders)
+               && (accessControlMaxAge == null ? other.accessControlMaxAge == null : accessControlMaxAge.equals(other.accessControlMaxAge));
+    }
+
+    public List<String> getMethods()
+    {
+        return methods;
+    }
+
+    public List<String> getHeaders()
+    {
+        return headers;
+    }
+
+    public List<String> getExposeHeaders()
+    {
+        return exposeHeaders;
+    }
+
+    public Long getAccessControlMaxAge()
+    {
+        return accessControlMaxAge;
+    }
+
+    /**
+     * @return the value of the Access-Control-Allow-Methods header, or null if no methods are allowed.
+     */
+    public String getAllowMethodsValue()
+    {
+        return allowMethodsValue;
+    }
+
+    /**
+     * @return the value of the Access-Control-Allow-Headers header, or null if no headers are allowed.
+     */
+    public String getAllowHeadersValue()
+    {
+        return allowHeadersValue;
+    }
+
+    /**
+     * @return the value of the Access-Control-Expose-Headers header, or null if no headers are exposed.
+     */
+    public String getExposeHeadersValue()
+    {
+        return exposeHeadersValue;
+    }
+}
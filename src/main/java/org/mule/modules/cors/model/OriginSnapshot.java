@@ -0,0 +1,279 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import org.mule.modules.cors.Constants;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Read only view of an origins snapshot written by {@link OriginSnapshotWriter}. The file is memory
+ * mapped and exact origins are looked up in it directly, so opening a snapshot takes the same time and
+ * heap whatever the number of origins, and applications on the same host mapping the same file share
+ * its pages. Only the policies, which are few, and the wildcard and default origins are read into the heap,
+ * along with the exact origins found, up to {@link #DECODED_ORIGINS} of them.
+ * <p/>
+ * The file starts with a header of eight ints: a magic number, the format version, the number of exact
+ * origins, the number of slots of the hash table and the offsets of the policies, of the patterns and
+ * of the keys, followed by the length of the file. The hash table comes next, each slot being three
+ * ints: the spread hash code of the url, the offset of the url among the keys plus one, zero meaning an
+ * empty slot, and the index of its policy. Urls are probed linearly from their hash code. Policies are
+ * origins without url in the form of {@link SerializedOrigin}, preceded by their number; patterns are a
+ * number followed by a key offset and a policy index each; keys are UTF-8 prefixed by an unsigned short
+ * length.
+ */
+public final class OriginSnapshot
+{
+
+    static final int MAGIC = 0x434f5253;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 8 * 4;
+    static final int SLOT_SIZE = 3 * 4;
+
+    //exact origins kept once found, the ones found past it are decoded anew on every lookup
+    static final int DECODED_ORIGINS = 10000;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int mask;
+    private final int keys;
+    private final OriginPolicy[] policies;
+    private final List<Origin> patternOrigins;
+    private final ConcurrentMap<String, CompiledOrigin> decodedOrigins = new ConcurrentHashMap<String, CompiledOrigin>();
+
+    private OriginSnapshot(File file, ByteBuffer buffer) throws IOException
+    {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+        {
+            throw new IOException(file + " is not an origins snapshot");
+        }
+        if (buffer.getInt(4) != VERSION)
+        {
+            throw new IOException("Unsupported origins snapshot version " + buffer.getInt(4) + " in " + file);
+        }
+        int slots = buffer.getInt(12);
+        int policiesOffset = buffer.getInt(16);
+        int patternsOffset = buffer.getInt(20);
+        this.keys = buffer.getInt(24);
+        if (buffer.getInt(28) != buffer.capacity() || Integer.bitCount(slots) != 1
+            || policiesOffset != HEADER_SIZE + slots * SLOT_SIZE || patternsOffset < policiesOffset || keys < patternsOffset
+            || keys > buffer.capacity())
+        {
+            throw new IOException("Truncated or corrupt origins snapshot " + file);
+        }
+        this.size = buffer.getInt(8);
+        this.mask = slots - 1;
+        this.policies = readPolicies(policiesOffset, patternsOffset);
+        this.patternOrigins = readPatternOrigins(patternsOffset);
+    }
+
+    /**
+     * Maps the snapshot read only. The mapping stays valid until the snapshot is garbage collected.
+     */
+    public static OriginSnapshot open(File file) throws IOException
+    {
+        RandomAccessFile snapshot = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = snapshot.getChannel();
+            if (channel.size() > Integer.MAX_VALUE)
+            {
+                throw new IOException("Origins snapshot " + file + " is too large");
+            }
+            return new OriginSnapshot(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+        finally
+        {
+            snapshot.close();
+        }
+    }
+
+    private OriginPolicy[] readPolicies(int start, int end) throws IOException
+    {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes(start, end - start)));
+        OriginPolicy[] read = new OriginPolicy[in.readInt()];
+        for (int i = 0; i < read.length; i++)
+        {
+            read[i] = OriginPolicy.compile(SerializedOrigin.read(in));
+        }
+        return read;
+    }
+
+    private List<Origin> readPatternOrigins(int start) throws IOException
+    {
+        int count = buffer.getInt(start);
+        List<Origin> read = new ArrayList<Origin>(count);
+        for (int i = 0; i < count; i++)
+        {
+            int entry = start + 4 + i * 8;
+            CompiledOrigin origin = CompiledOrigin.compile(key(buffer.getInt(entry)), policy(buffer.getInt(entry + 4)));
+            read.add(origin.toOrigin());
+        }
+        return Collections.unmodifiableList(read);
+    }
+
+    private OriginPolicy policy(int index) throws IOException
+    {
+        if (index < 0 || index >= policies.length)
+        {
+            throw new IOException("Corrupt origins snapshot " + file + ", unknown policy " + index);
+        }
+        return policies[index];
+    }
+
+    /**
+     * @return the origin with exactly the given url, or null if the snapshot does not hold it.
+     */
+    public CompiledOrigin find(String url)
+    {
+        if (url == null)
+        {
+            return null;
+        }
+        final CompiledOrigin decoded = decodedOrigins.get(url);
+        if (decoded != null)
+        {
+            return decoded;
+        }
+        int hash = spread(url.hashCode());
+        for (int i = hash & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++)
+        {
+            int slot = HEADER_SIZE + i * SLOT_SIZE;
+            int key = buffer.getInt(slot + 4);
+            if (key == 0)
+            {
+                return null;
+            }
+            if (buffer.getInt(slot) == hash && keyEquals(key - 1, url))
+            {
+                return decode(url, policies[buffer.getInt(slot + 8)]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the origin found, the same instance for every lookup of the url while there is room to keep it,
+     * so that hits neither allocate nor lose the requests counted on it.
+     */
+    private CompiledOrigin decode(String url, OriginPolicy policy)
+    {
+        final CompiledOrigin origin = CompiledOrigin.compile(url, policy);
+        if (decodedOrigins.size() >= DECODED_ORIGINS)
+        {
+            return origin;
+        }
+        final CompiledOrigin raced = decodedOrigins.putIfAbsent(url, origin);
+        return raced != null ? raced : origin;
+    }
+
+    private boolean keyEquals(int offset, String url)
+    {
+        int start = keys + offset + 2;
+        int length = buffer.getShort(keys + offset) & 0xffff;
+        int chars = url.length();
+        if (length < chars)
+        {
+            return false;
+        }
+        for (int i = 0; i < chars; i++)
+        {
+            char c = url.charAt(i);
+            if (c >= 0x80)
+            {
+                return url.equals(new String(bytes(start, length), UTF_8));
+            }
+            if (i >= length || buffer.get(start + i) != c)
+            {
+                return false;
+            }
+        }
+        return length == chars;
+    }
+
+    private String key(int offset)
+    {
+        int length = buffer.getShort(keys + offset) & 0xffff;
+        return new String(bytes(keys + offset + 2, length), UTF_8);
+    }
+
+    private byte[] bytes(int start, int length)
+    {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return bytes;
+    }
+
+    static int spread(int hashCode)
+    {
+        return hashCode ^ (hashCode >>> 16);
+    }
+
+    /**
+     * @return whether the url goes among the patterns rather than in the hash table.
+     */
+    static boolean isPattern(String url)
+    {
+        return Constants.DEFAULT_ORIGIN_NAME.equals(url) || WildcardOriginTrie.isPattern(url);
+    }
+
+    /**
+     * @return the wildcard and default origins of the snapshot, which are meant to be indexed along with
+     * the configured ones.
+     */
+    public List<Origin> getPatternOrigins()
+    {
+        return patternOrigins;
+    }
+
+    /**
+     * @return the number of exact origins.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    public int getPolicyCount()
+    {
+        return policies.length;
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+}
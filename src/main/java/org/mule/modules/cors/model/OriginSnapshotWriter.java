@@ -0,0 +1,194 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles a list of origins into a snapshot read by {@link OriginSnapshot}. Meant to be run once when
+ * the list changes, for instance from the origins file format:
+ * <pre>
+ * java -cp mule-module-cors.jar org.mule.modules.cors.model.OriginSnapshotWriter origins.properties origins.snapshot
+ * </pre>
+ */
+public final class OriginSnapshotWriter
+{
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private OriginSnapshotWriter()
+    {
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length != 2)
+        {
+            System.err.println("Usage: OriginSnapshotWriter <origins file> <snapshot file>");
+            System.exit(1);
+        }
+        List<Origin> origins = OriginsFile.read(new File(args[0]));
+        write(origins, new File(args[1]));
+        System.out.println("Wrote " + origins.size() + " origins to " + args[1]);
+    }
+
+    /**
+     * Writes the snapshot next to the target and then moves it in place, so that applications never map
+     * a partly written file. Later origins win over earlier ones with the same url.
+     */
+    public static void write(Collection<Origin> origins, File target) throws IOException
+    {
+        Map<String, Origin> byUrl = new LinkedHashMap<String, Origin>();
+        for (Origin origin : origins)
+        {
+            byUrl.put(origin.getUrl(), origin);
+        }
+
+        Map<List<Object>, Integer> policyIndexes = new LinkedHashMap<List<Object>, Integer>();
+        ByteArrayOutputStream policyBytes = new ByteArrayOutputStream();
+        DataOutputStream policyOut = new DataOutputStream(policyBytes);
+        ByteArrayOutputStream keyBytes = new ByteArrayOutputStream();
+        DataOutputStream keyOut = new DataOutputStream(keyBytes);
+
+        List<int[]> exact = new ArrayList<int[]>(byUrl.size());
+        List<int[]> patterns = new ArrayList<int[]>();
+        for (Origin origin : byUrl.values())
+        {
+            if (origin.getUrl() == null)
+            {
+                throw new IllegalArgumentException("Origins of a snapshot must have a url");
+            }
+            int policy = policyIndex(origin, policyIndexes, policyOut);
+            int key = keyOut.size();
+            writeKey(keyOut, origin.getUrl());
+            if (OriginSnapshot.isPattern(origin.getUrl()))
+            {
+                patterns.add(new int[] {key, policy});
+            }
+            else
+            {
+                exact.add(new int[] {OriginSnapshot.spread(origin.getUrl().hashCode()), key, policy});
+            }
+        }
+
+        //at most half full, so probes stay short
+        int slots = Integer.highestOneBit(Math.max(1, exact.size()) * 2 - 1) << 1;
+        int[] table = new int[slots * 3];
+        for (int[] entry : exact)
+        {
+            int i = entry[0] & (slots - 1);
+            while (table[i * 3 + 1] != 0)
+            {
+                i = (i + 1) & (slots - 1);
+            }
+            table[i * 3] = entry[0];
+            table[i * 3 + 1] = entry[1] + 1;
+            table[i * 3 + 2] = entry[2];
+        }
+
+        long policiesOffset = OriginSnapshot.HEADER_SIZE + (long) slots * OriginSnapshot.SLOT_SIZE;
+        long patternsOffset = policiesOffset + 4 + policyBytes.size();
+        long keysOffset = patternsOffset + 4 + patterns.size() * 8L;
+        long length = keysOffset + keyBytes.size();
+        if (length > Integer.MAX_VALUE)
+        {
+            throw new IllegalArgumentException("Too many origins for a snapshot");
+        }
+
+        File temporary = new File(target.getAbsoluteFile().getParentFile(), target.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary), 64 * 1024));
+        try
+        {
+            out.writeInt(OriginSnapshot.MAGIC);
+            out.writeInt(OriginSnapshot.VERSION);
+            out.writeInt(exact.size());
+            out.writeInt(slots);
+            out.writeInt((int) policiesOffset);
+            out.writeInt((int) patternsOffset);
+            out.writeInt((int) keysOffset);
+            out.writeInt((int) length);
+            for (int value : table)
+            {
+                out.writeInt(value);
+            }
+            out.writeInt(policyIndexes.size());
+            policyBytes.writeTo(out);
+            out.writeInt(patterns.size());
+            for (int[] pattern : patterns)
+            {
+                out.writeInt(pattern[0]);
+                out.writeInt(pattern[1]);
+            }
+            keyBytes.writeTo(out);
+        }
+        finally
+        {
+            out.close();
+        }
+        Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int policyIndex(Origin origin, Map<List<Object>, Integer> policyIndexes, DataOutputStream policyOut) throws IOException
+    {
+        List<Object> key = Arrays.<Object>asList(nullToEmpty(origin.getMethods()), nullToEmpty(origin.getHeaders()),
+                                                 nullToEmpty(origin.getExposeHeaders()), origin.getAccessControlMaxAge());
+        Integer index = policyIndexes.get(key);
+        if (index == null)
+        {
+            index = policyIndexes.size();
+            policyIndexes.put(key, index);
+            Origin policy = new Origin();
+            policy.setMethods(origin.getMethods());
+            policy.setHeaders(origin.getHeaders());
+            policy.setExposeHeaders(origin.getExposeHeaders());
+            policy.setAccessControlMaxAge(origin.getAccessControlMaxAge());
+            SerializedOrigin.write(policyOut, policy);
+        }
+        return index;
+    }
+
+    private static List<String> nullToEmpty(List<String> values)
+    {
+        return values != null ? values : Collections.<String>emptyList();
+    }
+
+    private static void writeKey(DataOutputStream out, String url) throws IOException
+    {
+        byte[] bytes = url.getBytes(UTF_8);
+        if (bytes.length > 0xffff)
+        {
+            throw new IllegalArgumentException("Origin url too long for a snapshot: " + url.substring(0, 64) + "...");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
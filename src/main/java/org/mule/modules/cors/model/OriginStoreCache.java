@@ -0,0 +1,342 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import org.mule.api.store.ObjectAlreadyExistsException;
+import org.mule.api.store.ObjectStore;
+import org.mule.api.store.ObjectStoreException;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Local copy of the origins looked up in a shared origins store, including the ones that were not
+ * found, so that repeated lookups of the same origin do not reach the store.
+ * <p/>
+ * The store holds a version stamp under {@link #VERSION_KEY} that is replaced every time its origins
+ * change. Each node reads the stamp at most once per check interval, from the request that happens to
+ * find the interval elapsed, and drops its whole copy when the stamp differs from the one it last saw.
+ * Changes made to the store are then seen by every node within one check interval, without polling
+ * any origin.
+ * <p/>
+ * Entries may also be given a time to live, with a shorter one for origins that were not found, for
+ * stores changed by applications that do not update the stamp. With refresh ahead, an entry read
+ * shortly before it expires is reloaded by a background thread, so hot origins never expire on the
+ * request path.
+ * <p/>
+ * The store is read through an {@link OriginStoreGuard}. Lookups that fail are not cached and their
+ * error is left to the caller.
+ */
+public class OriginStoreCache
+{
+
+    public static final String VERSION_KEY = "__corsOriginsVersion";
+
+    //pending background reloads, more are left to expire and be loaded on the request path
+    private static final int REFRESH_QUEUE_SIZE = 1024;
+
+    private static final Log logger = LogFactory.getLog(OriginStoreCache.class);
+
+    //marks an origin known not to be in the store
+    private static final CompiledOrigin ABSENT = CompiledOrigin.compile(new Origin());
+
+    private final OriginStoreGuard store;
+    private final int maxEntries;
+    private final long checkIntervalNanos;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final long refreshAheadNanos;
+    private final Runnable changeListener;
+    private final ThreadPoolExecutor refresher;
+
+    //replaced, never cleared, so that a lookup racing with an invalidation cannot repopulate the new copy
+    private volatile ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private volatile Serializable version;
+    private final AtomicLong nextCheck;
+
+    /**
+     * @param changeListener called whenever the origins of the store are found to have changed.
+     */
+    public OriginStoreCache(ObjectStore<Origin> store, int maxEntries, long checkIntervalMillis, Runnable changeListener)
+    {
+        this(new OriginStoreGuard(store), maxEntries, checkIntervalMillis, 0, 0, 0, changeListener);
+    }
+
+    /**
+     * @param ttlMillis         time an origin is kept, zero to keep it until the store changes.
+     * @param negativeTtlMillis time an origin that was not found is remembered, zero for the same as found ones.
+     * @param refreshAheadMillis how long before expiring an entry that is read gets reloaded in the
+     *                          background, zero to only load on the request path. Requires a time to live.
+     * @param changeListener    called whenever the origins of the store are found to have changed.
+     */
+    public OriginStoreCache(ObjectStore<Origin> store, int maxEntries, long checkIntervalMillis, long ttlMillis,
+                            long negativeTtlMillis, long refreshAheadMillis, Runnable changeListener)
+    {
+        this(new OriginStoreGuard(store), maxEntries, checkIntervalMillis, ttlMillis, negativeTtlMillis, refreshAheadMillis, changeListener);
+    }
+
+    /**
+     * @param store guard reading the origins store, which bounds how long a lookup may take.
+     */
+    public OriginStoreCache(OriginStoreGuard store, int maxEntries, long checkIntervalMillis, long ttlMillis,
+                            long negativeTtlMillis, long refreshAheadMillis, Runnable changeListener)
+    {
+        if (ttlMillis < 0 || negativeTtlMillis < 0 || refreshAheadMillis < 0)
+        {
+            throw new IllegalArgumentException("Origins cache times may not be negative");
+        }
+        if (refreshAheadMillis > 0 && (ttlMillis == 0 || refreshAheadMillis >= ttlMillis))
+        {
+            throw new IllegalArgumentException("Origins cache refresh ahead must be shorter than its time to live, got "
+                                               + refreshAheadMillis + " for " + ttlMillis);
+        }
+        this.store = store;
+        this.maxEntries = maxEntries;
+        this.checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(checkIntervalMillis);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = negativeTtlMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis) : ttlNanos;
+        this.refreshAheadNanos = TimeUnit.MILLISECONDS.toNanos(refreshAheadMillis);
+        this.changeListener = changeListener;
+        this.refresher = refreshAheadMillis > 0 ? newRefresher() : null;
+        this.version = readVersion();
+        this.nextCheck = new AtomicLong(System.nanoTime() + checkIntervalNanos);
+    }
+
+    private static ThreadPoolExecutor newRefresher()
+    {
+        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(REFRESH_QUEUE_SIZE), new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "cors-origins-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return the compiled origin stored under the given url, or null if there is none.
+     * @throws ObjectStoreException if the origin is not cached and the store cannot be read.
+     */
+    public CompiledOrigin get(String url) throws ObjectStoreException
+    {
+        checkVersion();
+        final ConcurrentMap<String, Entry> current = entries;
+        Entry entry = current.get(url);
+        if (entry != null && entry.expiring)
+        {
+            long now = System.nanoTime();
+            if (now - entry.expiresAt >= 0)
+            {
+                entry = null;
+            }
+            else if (refresher != null && now - entry.refreshAt >= 0 && entry.claimRefresh())
+            {
+                refresh(current, url, entry);
+            }
+        }
+        if (entry == null)
+        {
+            entry = newEntry(load(url));
+            if (current.size() >= maxEntries)
+            {
+                evict(current);
+            }
+            current.put(url, entry);
+        }
+        return entry.origin == ABSENT ? null : entry.origin;
+    }
+
+    private void refresh(final ConcurrentMap<String, Entry> current, final String url, final Entry stale)
+    {
+        try
+        {
+            refresher.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        //dropped if the cache was invalidated or the entry replaced in the meantime
+                        current.replace(url, stale, newEntry(load(url)));
+                    }
+                    catch (ObjectStoreException ose)
+                    {
+                        logger.warn("Error refreshing origin " + url + " from object store. Error: " + ose.getMessage());
+                        stale.releaseRefresh();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            //too many pending refreshes or disposed, the entry will be loaded again when it expires
+        }
+    }
+
+    private Entry newEntry(CompiledOrigin origin)
+    {
+        long ttl = origin == ABSENT ? negativeTtlNanos : ttlNanos;
+        if (ttl == 0)
+        {
+            return new Entry(origin, false, 0, 0);
+        }
+        long now = System.nanoTime();
+        //origins that were not found are only loaded again once expired
+        return new Entry(origin, true, now + ttl, now + ttl - (origin == ABSENT ? 0 : refreshAheadNanos));
+    }
+
+    /**
+     * Drops every cached origin and notifies the listener.
+     */
+    public void invalidate()
+    {
+        entries = new ConcurrentHashMap<String, Entry>();
+        changeListener.run();
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Stops the background refresh, if any.
+     */
+    public void dispose()
+    {
+        if (refresher != null)
+        {
+            refresher.shutdownNow();
+        }
+    }
+
+    /**
+     * Replaces the version stamp of the store, making every node drop its cached origins.
+     */
+    @SuppressWarnings("unchecked")
+    public static void writeVersion(ObjectStore<? extends Serializable> store) throws ObjectStoreException
+    {
+        ObjectStore<Serializable> stamps = (ObjectStore<Serializable>) store;
+        if (stamps.contains(VERSION_KEY))
+        {
+            stamps.remove(VERSION_KEY);
+        }
+        try
+        {
+            stamps.store(VERSION_KEY, UUID.randomUUID().toString());
+        }
+        catch (ObjectAlreadyExistsException e)
+        {
+            //written by another node at the same time, which is as good a change marker as ours
+        }
+    }
+
+    private void checkVersion()
+    {
+        long now = System.nanoTime();
+        long next = nextCheck.get();
+        if (now - next < 0 || !nextCheck.compareAndSet(next, now + checkIntervalNanos))
+        {
+            return;
+        }
+        Serializable current = readVersion();
+        if (current == null ? version != null : !current.equals(version))
+        {
+            version = current;
+            invalidate();
+        }
+    }
+
+    private Serializable readVersion()
+    {
+        try
+        {
+            return store.retrieve(VERSION_KEY);
+        }
+        catch (ObjectStoreException ose)
+        {
+            logger.warn("Unable to read origins version from object store. Error: " + ose.getMessage());
+            return version;
+        }
+    }
+
+    private CompiledOrigin load(String url) throws ObjectStoreException
+    {
+        Serializable value = store.retrieve(url);
+        return value instanceof Origin ? CompiledOrigin.compile((Origin) value) : ABSENT;
+    }
+
+    private void evict(ConcurrentMap<String, Entry> current)
+    {
+        //drop an arbitrary eighth of the entries rather than keeping an access order on every read
+        int toEvict = Math.max(1, maxEntries / 8);
+        Iterator<String> keys = current.keySet().iterator();
+        while (toEvict-- > 0 && keys.hasNext())
+        {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static final class Entry
+    {
+
+        private final CompiledOrigin origin;
+        private final boolean expiring;
+        private final long expiresAt;
+        private final long refreshAt;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(CompiledOrigin origin, boolean expiring, long expiresAt, long refreshAt)
+        {
+            this.origin = origin;
+            this.expiring = expiring;
+            this.expiresAt = expiresAt;
+            this.refreshAt = refreshAt;
+        }
+
+        /**
+         * @return true for the single caller that should reload the entry.
+         */
+        boolean claimRefresh()
+        {
+            return !refreshing.get() && refreshing.compareAndSet(false, true);
+        }
+
+        void releaseRefresh()
+        {
+            refreshing.set(false);
+        }
+    }
+}
@@ -0,0 +1,430 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import org.mule.api.store.ObjectDoesNotExistException;
+import org.mule.api.store.ObjectStore;
+import org.mule.api.store.ObjectStoreException;
+import org.mule.config.i18n.MessageFactory;
+
+import java.io.Serializable;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Reads values of an origins store on behalf of the request path, so that a slow or failing store
+ * cannot hold request threads for longer than a deadline.
+ * <p/>
+ * With a timeout, each read runs on a small pool of lookup threads and the caller gives up once the
+ * timeout elapses; when every lookup thread is still waiting on the store, reads fail right away.
+ * With a failure threshold, that many failures in a row open a circuit breaker and reads fail without
+ * reaching the store for the open time. After it, a single read goes through: the breaker closes if it
+ * succeeds and opens again if it fails. Without timeout nor threshold, reads simply go to the store.
+ * <p/>
+ * Concurrent reads of the same key share a single read of the store: the first one reads it and the
+ * others wait for its outcome, for no longer than the timeout, so an origin that suddenly gets traffic
+ * is read once rather than by every request that misses it.
+ */
+public class OriginStoreGuard
+{
+
+    public enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    //lookup threads, reads fail once all of them are waiting on the store
+    private static final int LOOKUP_THREADS = 16;
+
+    private static final Log logger = LogFactory.getLog(OriginStoreGuard.class);
+
+    private final ObjectStore<? extends Serializable> store;
+    private final long timeoutMillis;
+    private final int failureThreshold;
+    private final long openNanos;
+    private final Runnable recoveryListener;
+    private final ThreadPoolExecutor lookups;
+
+    private final ConcurrentMap<String, Read> reads = new ConcurrentHashMap<String, Read>();
+
+    private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile long openedAt;
+
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong rejections = new AtomicLong();
+    private final AtomicLong coalescedReads = new AtomicLong();
+
+    /**
+     * A guard that reads the store directly and never opens.
+     */
+    public OriginStoreGuard(ObjectStore<? extends Serializable> store)
+    {
+        this(store, 0, 0, 0, null);
+    }
+
+    /**
+     * @param timeoutMillis    time a read may take, zero to wait for the store as long as it takes.
+     * @param failureThreshold failed reads in a row that open the breaker, zero to never open it.
+     * @param openMillis       time the breaker stays open before letting a read through.
+     * @param recoveryListener called when a read succeeds after one or more failed, may be null.
+     */
+    public OriginStoreGuard(ObjectStore<? extends Serializable> store, long timeoutMillis, int failureThreshold, long openMillis,
+                            Runnable recoveryListener)
+    {
+        if (timeoutMillis < 0 || failureThreshold < 0 || openMillis < 0)
+        {
+            throw new IllegalArgumentException("Origins store timeout, failure threshold and open time may not be negative");
+        }
+        if (failureThreshold > 0 && openMillis == 0)
+        {
+            throw new IllegalArgumentException("Origins store open time is required together with a failure threshold");
+        }
+        this.store = store;
+        this.timeoutMillis = timeoutMillis;
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+        this.recoveryListener = recoveryListener;
+        this.lookups = timeoutMillis > 0 ? newLookups() : null;
+    }
+
+    private static ThreadPoolExecutor newLookups()
+    {
+        return new ThreadPoolExecutor(0, LOOKUP_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory()
+        {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "cors-origins-lookup-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return the value stored under the key, or null if there is none.
+     * @throws ObjectStoreException if the store failed, did not answer in time or the breaker is open.
+     */
+    public Serializable retrieve(String key) throws ObjectStoreException
+    {
+        Read read = new Read();
+        Read pending = reads.putIfAbsent(key, read);
+        if (pending != null)
+        {
+            coalescedReads.incrementAndGet();
+            return pending.await(timeoutMillis);
+        }
+        try
+        {
+            Serializable value = read(key);
+            read.succeeded(value);
+            return value;
+        }
+        catch (ObjectStoreException ose)
+        {
+            read.failed(ose);
+            throw ose;
+        }
+        catch (RuntimeException e)
+        {
+            //the reads waiting for this one must not wait forever
+            read.failed(unavailable("Error reading origins store", e));
+            throw e;
+        }
+        finally
+        {
+            reads.remove(key, read);
+        }
+    }
+
+    private Serializable read(String key) throws ObjectStoreException
+    {
+        if (!acquire())
+        {
+            rejections.incrementAndGet();
+            throw unavailable("Origins store circuit breaker is open", null);
+        }
+        Serializable value;
+        try
+        {
+            value = lookups != null ? retrieveWithin(key) : retrieveNow(key);
+        }
+        catch (ObjectStoreException ose)
+        {
+            failed();
+            throw ose;
+        }
+        catch (RuntimeException e)
+        {
+            failed();
+            throw unavailable("Error reading origins store", e);
+        }
+        succeeded();
+        return value;
+    }
+
+    private Serializable retrieveNow(String key) throws ObjectStoreException
+    {
+        try
+        {
+            return store.retrieve(key);
+        }
+        catch (ObjectDoesNotExistException e)
+        {
+            return null;
+        }
+    }
+
+    private Serializable retrieveWithin(final String key) throws ObjectStoreException
+    {
+        Future<Serializable> lookup;
+        try
+        {
+            lookup = lookups.submit(new Callable<Serializable>()
+            {
+                @Override
+                public Serializable call() throws Exception
+                {
+                    return retrieveNow(key);
+                }
+            });
+        }
+        catch (RejectedExecutionException e)
+        {
+            timeouts.incrementAndGet();
+            throw unavailable("Every origins store lookup thread is waiting on the store", e);
+        }
+        try
+        {
+            return lookup.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (TimeoutException e)
+        {
+            lookup.cancel(true);
+            timeouts.incrementAndGet();
+            throw unavailable("Origins store did not answer within " + timeoutMillis + " ms", e);
+        }
+        catch (InterruptedException e)
+        {
+            lookup.cancel(true);
+            Thread.currentThread().interrupt();
+            throw unavailable("Interrupted while reading origins store", e);
+        }
+        catch (ExecutionException e)
+        {
+            if (e.getCause() instanceof ObjectStoreException)
+            {
+                throw (ObjectStoreException) e.getCause();
+            }
+            throw unavailable("Error reading origins store", e.getCause());
+        }
+    }
+
+    private static ObjectStoreException unavailable(String message, Throwable cause)
+    {
+        return new ObjectStoreException(MessageFactory.createStaticMessage(message), cause);
+    }
+
+    private boolean acquire()
+    {
+        if (failureThreshold == 0)
+        {
+            return true;
+        }
+        State current = state.get();
+        if (current == State.CLOSED)
+        {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - openedAt < openNanos)
+        {
+            return false;
+        }
+        //one read per open time goes through, in case an earlier one never returns
+        if (state.compareAndSet(current, State.HALF_OPEN))
+        {
+            openedAt = now;
+            return true;
+        }
+        return false;
+    }
+
+    private void succeeded()
+    {
+        if (consecutiveFailures.get() == 0)
+        {
+            return;
+        }
+        consecutiveFailures.set(0);
+        if (state.getAndSet(State.CLOSED) != State.CLOSED)
+        {
+            logger.info("Origins store answered again, closing its circuit breaker");
+        }
+        if (recoveryListener != null)
+        {
+            recoveryListener.run();
+        }
+    }
+
+    private void failed()
+    {
+        failures.incrementAndGet();
+        int failed = consecutiveFailures.incrementAndGet();
+        if (failureThreshold == 0)
+        {
+            return;
+        }
+        if (state.get() == State.HALF_OPEN || failed == failureThreshold)
+        {
+            openedAt = System.nanoTime();
+            if (state.getAndSet(State.OPEN) != State.OPEN)
+            {
+                logger.warn("Origins store failed " + failed + " times in a row, opening its circuit breaker for "
+                            + TimeUnit.NANOSECONDS.toMillis(openNanos) + " ms");
+            }
+        }
+    }
+
+    public State getState()
+    {
+        return state.get();
+    }
+
+    /**
+     * @return the reads that did not get an answer in time, included in {@link #getFailures()}.
+     */
+    public long getTimeouts()
+    {
+        return timeouts.get();
+    }
+
+    /**
+     * @return the reads that failed or timed out.
+     */
+    public long getFailures()
+    {
+        return failures.get();
+    }
+
+    /**
+     * @return the reads refused without reaching the store because the breaker was open.
+     */
+    public long getRejections()
+    {
+        return rejections.get();
+    }
+
+    /**
+     * @return the reads that waited for a read of the same key already in progress instead of reaching the store.
+     */
+    public long getCoalescedReads()
+    {
+        return coalescedReads.get();
+    }
+
+    public void resetCounters()
+    {
+        timeouts.set(0);
+        failures.set(0);
+        rejections.set(0);
+        coalescedReads.set(0);
+    }
+
+    /**
+     * Stops the lookup threads, if any.
+     */
+    public void dispose()
+    {
+        if (lookups != null)
+        {
+            lookups.shutdownNow();
+        }
+    }
+
+    /**
+     * Outcome of a read of the store, shared with the reads of the same key made while it is in progress.
+     */
+    private static final class Read
+    {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+        private Serializable value;
+        private ObjectStoreException error;
+
+        void succeeded(Serializable value)
+        {
+            this.value = value;
+            done.countDown();
+        }
+
+        void failed(ObjectStoreException error)
+        {
+            this.error = error;
+            done.countDown();
+        }
+
+        /**
+         * Waits for the outcome for up to the timeout, or as long as it takes when it is zero.
+         */
+        Serializable await(long timeoutMillis) throws ObjectStoreException
+        {
+            try
+            {
+                if (timeoutMillis == 0)
+                {
+                    done.await();
+                }
+                else if (!done.await(timeoutMillis, TimeUnit.MILLISECONDS))
+                {
+                    //the read being waited for counts towards the breaker, not every request waiting for it
+                    throw unavailable("Origins store did not answer within " + timeoutMillis + " ms", null);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw unavailable("Interrupted while reading origins store", e);
+            }
+            if (error != null)
+            {
+                throw error;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Reads origins from a properties file. Each origin is a group of keys sharing an identifier:
+ * <pre>
+ * origin.app.url=https://app.example.com
+ * origin.app.methods=GET, POST
+ * origin.app.headers=Content-Type, Authorization
+ * origin.app.exposeHeaders=X-Request-Id
+ * origin.app.accessControlMaxAge=600
+ * </pre>
+ * Only the url is required. Origins are returned ordered by identifier.
+ */
+public final class OriginsFile
+{
+
+    private static final String PREFIX = "origin.";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private OriginsFile()
+    {
+    }
+
+    public static List<Origin> read(File file) throws IOException
+    {
+        InputStream in = new FileInputStream(file);
+        try
+        {
+            return read(new InputStreamReader(in, UTF_8));
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the content does not describe valid origins.
+     */
+    public static List<Origin> read(Reader reader) throws IOException
+    {
+        Properties properties = new Properties();
+        properties.load(reader);
+
+        Map<String, Origin> origins = new TreeMap<String, Origin>();
+        for (String key : properties.stringPropertyNames())
+        {
+            int separator = key.lastIndexOf('.');
+            if (!key.startsWith(PREFIX) || separator <= PREFIX.length())
+            {
+                throw new IllegalArgumentException("Invalid origins file key: " + key);
+            }
+            String id = key.substring(PREFIX.length(), separator);
+            Origin origin = origins.get(id);
+            if (origin == null)
+            {
+                origin = new Origin();
+                origins.put(id, origin);
+            }
+            set(origin, key.substring(separator + 1), properties.getProperty(key).trim(), key);
+        }
+
+        List<Origin> result = new ArrayList<Origin>(origins.size());
+        for (Map.Entry<String, Origin> entry : origins.entrySet())
+        {
+            if (entry.getValue().getUrl() == null || entry.getValue().getUrl().isEmpty())
+            {
+                throw new IllegalArgumentException("Origin " + entry.getKey() + " has no url");
+            }
+            result.add(entry.getValue());
+        }
+        return result;
+    }
+
+    private static void set(Origin origin, String attribute, String value, String key)
+    {
+        if ("url".equals(attribute))
+        {
+            origin.setUrl(value);
+        }
+        else if ("methods".equals(attribute))
+        {
+            origin.setMethods(split(value));
+        }
+        else if ("headers".equals(attribute))
+        {
+            origin.setHeaders(split(value));
+        }
+        else if ("exposeHeaders".equals(attribute))
+        {
+            origin.setExposeHeaders(split(value));
+        }
+        else if ("accessControlMaxAge".equals(attribute))
+        {
+            try
+            {
+                origin.setAccessControlMaxAge(Long.valueOf(value));
+            }
+            catch (NumberFormatException e)
+            {
+                throw new IllegalArgumentException("Invalid value for " + key + ": " + value);
+            }
+        }
+        else
+        {
+            throw new IllegalArgumentException("Unknown origin attribute in key: " + key);
+        }
+    }
+
+    private static List<String> split(String value)
+    {
+        if (value.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+        List<String> values = new ArrayList<String>();
+        for (String item : value.split(","))
+        {
+            String trimmed = item.trim();
+            if (!trimmed.isEmpty())
+            {
+                values.add(trimmed);
+            }
+        }
+        return values;
+    }
+}
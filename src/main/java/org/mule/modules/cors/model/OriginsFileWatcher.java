@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Watches a single file on a daemon thread and notifies a listener when it is created or modified.
+ * Changes arriving in a short burst, as editors usually produce, result in a single notification.
+ */
+final class OriginsFileWatcher implements Runnable
+{
+
+    interface Listener
+    {
+
+        void fileChanged(File file);
+    }
+
+    private static final long SETTLE_MILLIS = 200;
+    private static final long STOP_TIMEOUT_MILLIS = 5000;
+
+    private final Log logger = LogFactory.getLog(getClass());
+
+    private final File file;
+    private final Listener listener;
+    private WatchService watchService;
+    private Thread thread;
+
+    OriginsFileWatcher(File file, Listener listener)
+    {
+        this.file = file.getAbsoluteFile();
+        this.listener = listener;
+    }
+
+    void start() throws IOException
+    {
+        Path directory = file.getParentFile().toPath();
+        watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        thread = new Thread(this, "cors-origins-watcher[" + file.getName() + "]");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching and waits for a reload in progress to finish.
+     */
+    void stop()
+    {
+        try
+        {
+            watchService.close();
+        }
+        catch (IOException e)
+        {
+            logger.warn("Unable to close watch service. Error: " + e.getMessage());
+        }
+        thread.interrupt();
+        if (thread != Thread.currentThread())
+        {
+            try
+            {
+                thread.join(STOP_TIMEOUT_MILLIS);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            while (!Thread.currentThread().isInterrupted())
+            {
+                if (changed(watchService.take()))
+                {
+                    //let the writer finish and swallow the events of the same burst
+                    Thread.sleep(SETTLE_MILLIS);
+                    WatchKey key;
+                    while ((key = watchService.poll()) != null)
+                    {
+                        key.pollEvents();
+                        key.reset();
+                    }
+                    notifyListener();
+                }
+            }
+        }
+        catch (InterruptedException e)
+        {
+            //stopped
+        }
+        catch (ClosedWatchServiceException e)
+        {
+            //stopped
+        }
+    }
+
+    private void notifyListener()
+    {
+        try
+        {
+            listener.fileChanged(file);
+        }
+        catch (RuntimeException e)
+        {
+            logger.error("Error handling change of " + file, e);
+        }
+    }
+
+    private boolean changed(WatchKey key)
+    {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents())
+        {
+            if (event.kind() == OVERFLOW || file.getName().equals(String.valueOf(event.context())))
+            {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
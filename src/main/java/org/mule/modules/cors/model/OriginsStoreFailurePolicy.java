@@ -0,0 +1,37 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+/**
+ * How an origin is resolved when the shared origins store cannot be read and there is no earlier
+ * answer for it to fall back to.
+ */
+public enum OriginsStoreFailurePolicy
+{
+    /**
+     * The origin is treated as not stored, so requests from it are rejected unless a pattern or the
+     * default origin applies.
+     */
+    FAIL_CLOSED,
+
+    /**
+     * The origin is allowed for every standard method and any request header, without exposed headers
+     * nor max age so that browsers do not keep the answer once the store is back. Any site may then call
+     * the resource, so it may not be combined with processors accepting credentials.
+     */
+    FAIL_OPEN
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+/**
+ * What is done with the response and the inbound payload of a request that CORS does not allow.
+ */
+public enum RejectionPolicy
+{
+    /**
+     * The payload is cleared and the response, status included, is left to the flow.
+     */
+    FLOW,
+
+    /**
+     * The rejection status is set and a streaming payload is read and discarded up to the drain limit.
+     * When it is longer, it is closed unread together with the connection.
+     */
+    DRAIN,
+
+    /**
+     * The rejection status is set and a streaming payload is closed unread together with the connection.
+     */
+    CLOSE
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact serialized form of an {@link Origin}, written in its place so that persistent and clustered
+ * stores neither pay for the class descriptors of the origin and its lists nor for reading them back
+ * reflectively.
+ * <p/>
+ * The form starts with a version and a byte flagging the fields that are set. Strings are UTF-8 prefixed
+ * with their length and standard methods take a single byte each. Readers reject versions they do not
+ * know, so a new version must come with a new reader.
+ */
+final class SerializedOrigin implements Externalizable
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int VERSION = 1;
+
+    private static final int MAX_AGE = 1;
+    private static final int METHODS = 1 << 1;
+    private static final int HEADERS = 1 << 2;
+    private static final int EXPOSE_HEADERS = 1 << 3;
+
+    //a method is written as its index here, 0 being followed by the name of a method not listed
+    private static final String[] STANDARD_METHODS = {null, "GET", "HEAD", "POST", "PUT", "DELETE", "CONNECT", "OPTIONS", "TRACE", "PATCH"};
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private Origin origin;
+
+    /**
+     * For deserialization only.
+     */
+    public SerializedOrigin()
+    {
+    }
+
+    SerializedOrigin(Origin origin)
+    {
+        this.origin = origin;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException
+    {
+        write(out, origin);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException
+    {
+        origin = read(in);
+    }
+
+    private Object readResolve()
+    {
+        return origin;
+    }
+
+    /**
+     * Writes the origin in the compact form, without any class descriptor.
+     */
+    static void write(DataOutput out, Origin origin) throws IOException
+    {
+        int fields = (origin.getAccessControlMaxAge() != null ? MAX_AGE : 0)
+                     | (origin.getMethods() != null ? METHODS : 0)
+                     | (origin.getHeaders() != null ? HEADERS : 0)
+                     | (origin.getExposeHeaders() != null ? EXPOSE_HEADERS : 0);
+        out.writeByte(VERSION);
+        out.writeByte(fields);
+        writeString(out, origin.getUrl());
+        if (origin.getAccessControlMaxAge() != null)
+        {
+            out.writeLong(origin.getAccessControlMaxAge());
+        }
+        if (origin.getMethods() != null)
+        {
+            writeMethods(out, origin.getMethods());
+        }
+        if (origin.getHeaders() != null)
+        {
+            writeStrings(out, origin.getHeaders());
+        }
+        if (origin.getExposeHeaders() != null)
+        {
+            writeStrings(out, origin.getExposeHeaders());
+        }
+    }
+
+    static Origin read(DataInput in) throws IOException
+    {
+        int version = in.readUnsignedByte();
+        if (version != VERSION)
+        {
+            throw new InvalidObjectException("Unsupported serialized origin version " + version);
+        }
+        int fields = in.readUnsignedByte();
+        Origin origin = new Origin();
+        origin.setUrl(readString(in));
+        origin.setAccessControlMaxAge((fields & MAX_AGE) != 0 ? in.readLong() : null);
+        origin.setMethods((fields & METHODS) != 0 ? readMethods(in) : null);
+        origin.setHeaders((fields & HEADERS) != 0 ? readStrings(in) : null);
+        origin.setExposeHeaders((fields & EXPOSE_HEADERS) != 0 ? readStrings(in) : null);
+        return origin;
+    }
+
+    private static void writeMethods(DataOutput out, List<String> methods) throws IOException
+    {
+        writeLength(out, methods.size());
+        for (String method : methods)
+        {
+            int code = code(method);
+            out.writeByte(code);
+            if (code == 0)
+            {
+                writeString(out, method);
+            }
+        }
+    }
+
+    private static List<String> readMethods(DataInput in) throws IOException
+    {
+        int size = readLength(in);
+        List<String> methods = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++)
+        {
+            int code = in.readUnsignedByte();
+            if (code >= STANDARD_METHODS.length)
+            {
+                throw new InvalidObjectException("Unknown method code " + code);
+            }
+            methods.add(code != 0 ? STANDARD_METHODS[code] : readString(in));
+        }
+        return methods;
+    }
+
+    private static int code(String method)
+    {
+        for (int code = 1; code < STANDARD_METHODS.length; code++)
+        {
+            if (STANDARD_METHODS[code].equals(method))
+            {
+                return code;
+            }
+        }
+        return 0;
+    }
+
+    private static void writeStrings(DataOutput out, List<String> values) throws IOException
+    {
+        writeLength(out, values.size());
+        for (String value : values)
+        {
+            writeString(out, value);
+        }
+    }
+
+    private static List<String> readStrings(DataInput in) throws IOException
+    {
+        int size = readLength(in);
+        List<String> values = new ArrayList<String>(size);
+        for (int i = 0; i < size; i++)
+        {
+            values.add(readString(in));
+        }
+        return values;
+    }
+
+    /**
+     * Writes the length of the UTF-8 bytes plus one, zero standing for null, followed by the bytes.
+     */
+    private static void writeString(DataOutput out, String value) throws IOException
+    {
+        if (value == null)
+        {
+            writeLength(out, 0);
+            return;
+        }
+        byte[] bytes = value.getBytes(UTF_8);
+        writeLength(out, bytes.length + 1);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInput in) throws IOException
+    {
+        int length = readLength(in);
+        if (length == 0)
+        {
+            return null;
+        }
+        byte[] bytes = new byte[length - 1];
+        in.readFully(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Writes a non negative int in groups of seven bits, lowest first, so that lengths below 128 take a single byte.
+     */
+    private static void writeLength(DataOutput out, int length) throws IOException
+    {
+        while ((length & ~0x7F) != 0)
+        {
+            out.writeByte((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.writeByte(length);
+    }
+
+    private static int readLength(DataInput in) throws IOException
+    {
+        int length = 0;
+        for (int shift = 0; shift < 32; shift += 7)
+        {
+            int b = in.readUnsignedByte();
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+            {
+                if (length < 0)
+                {
+                    break;
+                }
+                return length;
+            }
+        }
+        throw new InvalidObjectException("Malformed serialized origin length");
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of wildcard subdomain origins such as <code>https://*.tenant.example.com</code>.
+ * <p/>
+ * Patterns are grouped by scheme and port, and then stored in a trie keyed on the labels of the host
+ * read from right to left, so looking up an origin costs one step per label of its host regardless of
+ * the number of patterns. The wildcard matches one or more labels, and when several patterns match the
+ * most specific one wins.
+ */
+public final class WildcardOriginTrie
+{
+
+    public static final WildcardOriginTrie EMPTY = new Builder().build();
+
+    private static final String SCHEME_SEPARATOR = "://";
+    private static final String WILDCARD_PREFIX = "*.";
+
+    private final Root[] roots;
+
+    private WildcardOriginTrie(Root[] roots)
+    {
+        this.roots = roots;
+    }
+
+    /**
+     * @return whether the url is a wildcard subdomain pattern rather than a literal origin.
+     */
+    public static boolean isPattern(String url)
+    {
+        if (url == null)
+        {
+            return false;
+        }
+        int hostStart = url.indexOf(SCHEME_SEPARATOR);
+        if (hostStart <= 0)
+        {
+            return false;
+        }
+        hostStart += SCHEME_SEPARATOR.length();
+        int hostEnd = portSeparator(url, hostStart);
+        return url.startsWith(WILDCARD_PREFIX, hostStart)
+               && hostEnd > hostStart + WILDCARD_PREFIX.length()
+               && url.indexOf('*', hostStart + 1) < 0
+               && url.charAt(hostEnd - 1) != '.';
+    }
+
+    public boolean isEmpty()
+    {
+        return roots.length == 0;
+    }
+
+    /**
+     * @return the most specific pattern matching the given origin, or null.
+     */
+    public CompiledOrigin find(String origin)
+    {
+        if (roots.length == 0 || origin == null)
+        {
+            return null;
+        }
+        int schemeEnd = origin.indexOf(SCHEME_SEPARATOR);
+        if (schemeEnd <= 0)
+        {
+            return null;
+        }
+        int hostStart = schemeEnd + SCHEME_SEPARATOR.length();
+        int hostEnd = portSeparator(origin, hostStart);
+        if (hostEnd <= hostStart || origin.charAt(hostStart) == '[')
+        {
+            return null;
+        }
+
+        for (Root root : roots)
+        {
+            if (root.matches(origin, schemeEnd, hostEnd))
+            {
+                return root.node.find(origin, hostStart, hostEnd);
+            }
+        }
+        return null;
+    }
+
+    private static int portSeparator(String url, int hostStart)
+    {
+        int end = url.length();
+        for (int i = end - 1; i >= hostStart; i--)
+        {
+            char c = url.charAt(i);
+            if (c == ':')
+            {
+                return i;
+            }
+            if (c < '0' || c > '9')
+            {
+                break;
+            }
+        }
+        return end;
+    }
+
+    public static class Builder
+    {
+
+        private final Map<String, Root> roots = new HashMap<String, Root>();
+
+        public Builder add(CompiledOrigin origin)
+        {
+            String url = origin.getUrl();
+            int schemeEnd = url.indexOf(SCHEME_SEPARATOR);
+            int hostStart = schemeEnd + SCHEME_SEPARATOR.length();
+            int hostEnd = portSeparator(url, hostStart);
+
+            String scheme = url.substring(0, schemeEnd);
+            String port = url.substring(hostEnd);
+            String rootKey = scheme + port;
+            Root root = roots.get(rootKey);
+            if (root == null)
+            {
+                root = new Root(scheme, port);
+                roots.put(rootKey, root);
+            }
+
+            //labels of the domain after the wildcard, from right to left
+            Node node = root.node;
+            int labelEnd = hostEnd;
+            int domainStart = hostStart + WILDCARD_PREFIX.length();
+            while (labelEnd > domainStart)
+            {
+                int labelStart = url.lastIndexOf('.', labelEnd - 1) + 1;
+                labelStart = Math.max(labelStart, domainStart);
+                node = node.child(url.substring(labelStart, labelEnd));
+                labelEnd = labelStart - 1;
+            }
+            node.wildcard = origin;
+            return this;
+        }
+
+        public WildcardOriginTrie build()
+        {
+            List<Root> frozen = new ArrayList<Root>(roots.values());
+            for (Root root : frozen)
+            {
+                root.node.freeze();
+            }
+            return new WildcardOriginTrie(frozen.toArray(new Root[frozen.size()]));
+        }
+    }
+
+    private static final class Root
+    {
+
+        private final String scheme;
+        private final String port;
+        private final Node node = new Node();
+
+        Root(String scheme, String port)
+        {
+            this.scheme = scheme;
+            this.port = port;
+        }
+
+        boolean matches(String origin, int schemeEnd, int hostEnd)
+        {
+            return schemeEnd == scheme.length()
+                   && origin.regionMatches(0, scheme, 0, schemeEnd)
+                   && origin.length() - hostEnd == port.length()
+                   && origin.regionMatches(hostEnd, port, 0, port.length());
+        }
+    }
+
+    private static final class Node
+    {
+
+        private Map<String, Node> building = new HashMap<String, Node>();
+        private String[] labels;
+        private Node[] children;
+        private int mask;
+        private CompiledOrigin wildcard;
+
+        Node child(String label)
+        {
+            Node child = building.get(label);
+            if (child == null)
+            {
+                child = new Node();
+                building.put(label, child);
+            }
+            return child;
+        }
+
+        void freeze()
+        {
+            int capacity = 1;
+            while (capacity < building.size() * 2)
+            {
+                capacity <<= 1;
+            }
+            labels = new String[capacity];
+            children = new Node[capacity];
+            mask = capacity - 1;
+            for (Map.Entry<String, Node> entry : building.entrySet())
+            {
+                String label = entry.getKey();
+                int slot = hash(label, 0, label.length()) & mask;
+                while (labels[slot] != null)
+                {
+                    slot = (slot + 1) & mask;
+                }
+                labels[slot] = label;
+                children[slot] = entry.getValue();
+                entry.getValue().freeze();
+            }
+            building = null;
+        }
+
+        CompiledOrigin find(String origin, int hostStart, int hostEnd)
+        {
+            CompiledOrigin match = null;
+            Node node = this;
+            int labelEnd = hostEnd;
+            while (labelEnd > hostStart)
+            {
+                int labelStart = origin.lastIndexOf('.', labelEnd - 1) + 1;
+                if (labelStart < hostStart)
+                {
+                    labelStart = hostStart;
+                }
+                node = node.get(origin, labelStart, labelEnd);
+                if (node == null)
+                {
+                    break;
+                }
+                labelEnd = labelStart - 1;
+                //the wildcard needs at least one more label on the left
+                if (node.wildcard != null && labelEnd > hostStart)
+                {
+                    match = node.wildcard;
+                }
+            }
+            return match;
+        }
+
+        private Node get(String origin, int start, int end)
+        {
+            int length = end - start;
+            int slot = hash(origin, start, end) & mask;
+            String label;
+            while ((label = labels[slot]) != null)
+            {
+                if (label.length() == length && label.regionMatches(0, origin, start, length))
+                {
+                    return children[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private static int hash(String value, int start, int end)
+        {
+            int h = 0;
+            for (int i = start; i < end; i++)
+            {
+                h = 31 * h + value.charAt(i);
+            }
+            return h ^ (h >>> 16);
+        }
+    }
+}
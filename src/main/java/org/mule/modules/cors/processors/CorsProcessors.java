@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.processors;
+
+import org.mule.modules.cors.CorsFilter;
+import org.mule.modules.cors.MuleCorsFilter;
+import org.mule.modules.cors.model.CorsConfig;
+import org.mule.modules.cors.model.OriginsStoreFailurePolicy;
+
+/**
+ * Setup shared by the processors that answer CORS requests.
+ */
+final class CorsProcessors
+{
+
+    private CorsProcessors()
+    {
+    }
+
+    /**
+     * @return the filter of a processor with the given attributes.
+     * @throws IllegalArgumentException if the attributes cannot be used together.
+     */
+    static CorsFilter newCorsFilter(CorsConfig config, boolean publicResource, boolean acceptsCredentials)
+    {
+        if (publicResource && acceptsCredentials)
+        {
+            throw new IllegalArgumentException("Resource may not be public and accept credentials at the same time");
+        }
+        if (acceptsCredentials && config.getOriginsStoreFailurePolicy() == OriginsStoreFailurePolicy.FAIL_OPEN)
+        {
+            throw new IllegalArgumentException("Resource may not accept credentials when the origins store fails open");
+        }
+        return new MuleCorsFilter(config, publicResource, acceptsCredentials);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.mule.modules.cors.processors;
+
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleException;
+import org.mule.api.MuleMessage;
+import org.mule.api.lifecycle.Initialisable;
+import org.mule.api.lifecycle.InitialisationException;
+import org.mule.module.http.api.HttpConstants;
+import org.mule.modules.cors.Constants;
+import org.mule.modules.cors.CorsFilter;
+import org.mule.modules.cors.CorsRequestContext;
+import org.mule.modules.cors.model.CorsConfig;
+import org.mule.processor.AbstractInterceptingMessageProcessor;
+
+/**
+ * Answers preflight requests on its own: the headers of the decision are set, the status is set to
+ * {@link #PREFLIGHT_STATUS} and the event is returned without reaching the rest of the flow. Preflights that
+ * are not allowed get the same empty response without CORS headers, which the browser takes as a refusal.
+ * <p/>
+ * Any other request, including OPTIONS requests without an Origin header, goes on to the rest of the flow
+ * untouched and without looking up its origin, so it belongs at the start of the flow, ahead of cors:validate.
+ */
+public class PreflightMessageProcessor extends AbstractInterceptingMessageProcessor implements Initialisable {
+
+    public static final int PREFLIGHT_STATUS = 204;
+
+    protected boolean publicResource;
+    protected boolean acceptsCredentials;
+    protected CorsConfig config;
+    protected CorsFilter corsFilter;
+
+    @Override
+    public MuleEvent process(MuleEvent event) throws MuleException {
+        final MuleMessage message = event.getMessage();
+        if (!Constants.PREFLIGHT_METHOD.equals(message.getInboundProperty(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY))) {
+            return processNext(event);
+        }
+
+        final CorsRequestContext context = corsFilter.evaluate(event);
+        if (!context.isPreflight()) {
+            return processNext(event);
+        }
+
+        corsFilter.filter(event, context);
+        corsFilter.addHeaders(event, context);
+        if (!context.getDecision().isRateLimited()) {
+            // rate limited preflights keep the status set by the filter
+            message.setOutboundProperty(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY, PREFLIGHT_STATUS);
+        }
+        return event;
+    }
+
+    @Override
+    public void initialise() throws InitialisationException
+    {
+        corsFilter = CorsProcessors.newCorsFilter(config, publicResource, acceptsCredentials);
+    }
+
+    public void setPublicResource(boolean publicResource) {
+        this.publicResource = publicResource;
+    }
+
+    public void setAcceptsCredentials(boolean acceptsCredentials) {
+        this.acceptsCredentials = acceptsCredentials;
+    }
+
+    public void setConfig(CorsConfig config) {
+        this.config = config;
+    }
+}
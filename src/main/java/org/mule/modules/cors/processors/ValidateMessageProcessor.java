@@ -27,11 +27,9 @@ import org.mule.api.MuleMessage;
 import org.mule.api.lifecycle.Initialisable;
 import org.mule.api.lifecycle.InitialisationException;
 import org.mule.api.transport.ReplyToHandler;
-import org.mule.module.http.api.HttpConstants;
-import org.mule.module.http.api.HttpHeaders;
 import org.mule.modules.cors.Constants;
 import org.mule.modules.cors.CorsFilter;
-import org.mule.modules.cors.MuleCorsFilter;
+import org.mule.modules.cors.CorsRequestContext;
 import org.mule.modules.cors.model.CorsConfig;
 import org.mule.processor.AbstractRequestResponseMessageProcessor;
 
@@ -43,15 +41,29 @@ public class ValidateMessageProcessor extends AbstractRequestResponseMessageProc
     protected CorsConfig config;
     protected CorsFilter corsFilter;
 
+    protected MuleEvent processRequest(final CorsRequestContext context, MuleEvent event) throws MuleException {
+        return corsFilter.filter(event, context);
+    }
+
+    /**
+     * @deprecated evaluates the request again and flags the event with {@link Constants#CORS_STOP_PROCESSING_FLAG},
+     * use {@link #processRequest(CorsRequestContext, MuleEvent)}.
+     */
+    @Deprecated
     @Override
     protected MuleEvent processRequest(MuleEvent event) throws MuleException {
         return corsFilter.filter(event);
     }
 
+    /**
+     * @deprecated runs the flow unless the event was flagged by {@link #processRequest(MuleEvent)}, which takes a
+     * lookup of the flag on every request, use {@link #processNext(CorsRequestContext, MuleEvent)}.
+     */
+    @Deprecated
     @Override
     protected MuleEvent processNext(MuleEvent event) throws MuleException
     {
-        if(event != null && !VoidMuleEvent.getInstance().equals(event)
+        if(hasMessage(event)
                 && Boolean.TRUE.equals(event.getMessage().getInvocationProperty(Constants.CORS_STOP_PROCESSING_FLAG))) {
             return event;
         }
@@ -59,9 +71,33 @@ public class ValidateMessageProcessor extends AbstractRequestResponseMessageProc
         return super.processNext(event);
     }
 
+    protected MuleEvent processNext(final CorsRequestContext context, MuleEvent event) throws MuleException
+    {
+        if (!context.isInvokeFlow()) {
+            return event;
+        }
+
+        // the context already tells whether the flow runs, the flag of the deprecated path is not looked up
+        return super.processNext(event);
+    }
+
+    protected MuleEvent processResponse(final CorsRequestContext context, MuleEvent event) throws MuleException
+    {
+        if (hasMessage(event)) {
+            corsFilter.addHeaders(event, context);
+        }
+        return event;
+    }
+
+    /**
+     * @deprecated evaluates the request again, use {@link #processResponse(CorsRequestContext, MuleEvent)}.
+     */
+    @Deprecated
     protected MuleEvent processResponse(final String origin, final String method, final String requestMethod, final String requestHeaders, MuleEvent event) throws MuleException
     {
-        corsFilter.addHeaders(event, origin, method, requestMethod, requestHeaders);
+        if (hasMessage(event)) {
+            corsFilter.addHeaders(event, origin, method, requestMethod, requestHeaders);
+        }
         return event;
     }
 
@@ -69,85 +105,94 @@ public class ValidateMessageProcessor extends AbstractRequestResponseMessageProc
     protected MuleEvent processBlocking(MuleEvent event) throws MuleException {
         MessagingException exception = null;
 
-        final String origin = event.getMessage().getInboundProperty(HttpHeaders.Names.ORIGIN);
-        final String method = event.getMessage().getInboundProperty(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY);
-        final String requestMethod = event.getMessage().getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_METHOD);
-        final String requestHeaders = event.getMessage().getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_HEADERS);
+        final CorsRequestContext context = corsFilter.evaluate(event);
 
         try {
-            return processResponse(origin, method, requestMethod, requestHeaders, processNext(processRequest(event)));
+            MuleEvent result = processNext(context, processRequest(context, event));
+            // headers go on the request event when the flow returned nothing to put them on
+            processResponse(context, hasMessage(result) ? result : event);
+            return result;
         } catch (MessagingException e) {
             exception = e;
             throw e;
         } finally {
-            processFinally(event, exception, origin, method, requestMethod, requestHeaders);
+            processFinally(event, exception, context);
+        }
+    }
+
+    /**
+     * Adds the headers of the decision to the event of the exception, successful responses already have them.
+     */
+    protected void processFinally(MuleEvent event, MessagingException exception, final CorsRequestContext context)
+    {
+        super.processFinally(event, exception);
+        if (exception != null && hasMessage(exception.getEvent())) {
+            corsFilter.addHeaders(exception.getEvent(), context);
         }
     }
 
+    /**
+     * @deprecated evaluates the request again, use {@link #processFinally(MuleEvent, MessagingException, CorsRequestContext)}.
+     */
+    @Deprecated
     protected void processFinally(MuleEvent event, MessagingException exception, final String origin, final String method, final String requestMethod, final String requestHeaders)
     {
         super.processFinally(event, exception);
-        corsFilter.addHeaders(exception == null ? event : exception.getEvent(), origin, method, requestMethod, requestHeaders);
+        MuleEvent response = exception == null ? event : exception.getEvent();
+        if (hasMessage(response)) {
+            corsFilter.addHeaders(response, origin, method, requestMethod, requestHeaders);
+        }
     }
 
     protected MuleEvent processNonBlocking(MuleEvent event) throws MuleException {
 
-        final String origin = event.getMessage().getInboundProperty(HttpHeaders.Names.ORIGIN);
-        final String method = event.getMessage().getInboundProperty(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY);
-        final String requestMethod = event.getMessage().getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_METHOD);
-        final String requestHeaders = event.getMessage().getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_HEADERS);
+        final CorsRequestContext context = corsFilter.evaluate(event);
+        if (!context.isCors()) {
+            // nothing to add to the response, so the reply does not need to be intercepted
+            return processNext(context, processRequest(context, event));
+        }
 
-        final ReplyToHandler corsReplyToHandler = new CorsReplyToHandler(event.getReplyToHandler(), origin, method,
-                                                                         requestMethod, requestHeaders);
+        final ReplyToHandler corsReplyToHandler = new CorsReplyToHandler(event.getReplyToHandler(), context);
 
         event = new DefaultMuleEvent(event, corsReplyToHandler);
         // Update RequestContext ThreadLocal for backwards compatibility
         OptimizedRequestContext.unsafeSetEvent(event);
         try {
-            MuleEvent result = processNext(processRequest(event));
+            MuleEvent result = processNext(context, processRequest(context, event));
             if (!(result instanceof NonBlockingVoidMuleEvent)) {
-                return processResponse(origin, method, requestMethod, requestHeaders, result);
+                return processResponse(context, result);
             } else {
                 return result;
             }
         } catch (MessagingException exception) {
-            processFinally(event, exception, origin, method, requestMethod, requestHeaders);
+            processFinally(event, exception, context);
             throw exception;
         }
     }
 
+    private static boolean hasMessage(MuleEvent event) {
+        return event != null && !VoidMuleEvent.getInstance().equals(event);
+    }
+
     @Override
     public void initialise() throws InitialisationException
     {
-        if (publicResource && acceptsCredentials)
-        {
-            throw new IllegalArgumentException("Resource may not be public and accept credentials at the same time");
-        }
-
-        corsFilter = new MuleCorsFilter(config, publicResource, acceptsCredentials);
+        corsFilter = CorsProcessors.newCorsFilter(config, publicResource, acceptsCredentials);
     }
 
     class CorsReplyToHandler implements ReplyToHandler {
 
-        private final String origin;
-        private final String method;
-        private final String requestMethod;
-        private final String requestHeaders;
+        private final CorsRequestContext context;
         private final ReplyToHandler originalReplyToHandler;
 
-        public CorsReplyToHandler(final ReplyToHandler originalReplyToHandler, final String origin, final String method,
-                                  final String requestMethod, final String requestHeaders) {
+        public CorsReplyToHandler(final ReplyToHandler originalReplyToHandler, final CorsRequestContext context) {
             this.originalReplyToHandler = originalReplyToHandler;
-            this.origin = origin;
-            this.method = method;
-            this.requestMethod = requestMethod;
-            this.requestHeaders = requestHeaders;
+            this.context = context;
         }
 
         @Override
         public void processReplyTo(MuleEvent event, MuleMessage muleMessage, Object replyTo) throws MuleException {
-            MuleEvent response = processResponse(origin, method, requestMethod, requestHeaders,
-                                                 new DefaultMuleEvent(event, originalReplyToHandler));
+            MuleEvent response = processResponse(context, new DefaultMuleEvent(event, originalReplyToHandler));
             // Update RequestContext ThreadLocal for backwards compatibility
             OptimizedRequestContext.unsafeSetEvent(response);
             if (!NonBlockingVoidMuleEvent.getInstance().equals(response))
@@ -159,7 +204,7 @@ public class ValidateMessageProcessor extends AbstractRequestResponseMessageProc
 
         @Override
         public void processExceptionReplyTo(MessagingException exception, Object replyTo) {
-            processFinally(exception.getEvent(), exception, origin, method, requestMethod, requestHeaders);
+            processFinally(exception.getEvent(), exception, context);
             originalReplyToHandler.processExceptionReplyTo(exception, replyTo);
         }
     }
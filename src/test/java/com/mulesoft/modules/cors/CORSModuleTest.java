@@ -56,6 +56,8 @@ public class CORSModuleTest extends FunctionalTestCase {
 
     public static final String CORS_DEFAULT_ENDPOINT_PATH = "/default";
 
+    public static final String CORS_PREFLIGHT_ENDPOINT_PATH = "/preflight";
+
     public static final String CORS_PUBLIC_ENDPOINT_PATH = "/public";
 
     public static final String CORS_HEADERS_ENDPOINT_PATH = "/headers";
@@ -155,6 +157,24 @@ public class CORSModuleTest extends FunctionalTestCase {
         assertThat(allowMethods.getValue(), containsString("PUT"));
     }
 
+    @Test
+    public void testPreflightResponder() throws Exception {
+        final HttpResponse response = Request.Options("http://localhost:" + httpPort.getValue() + CORS_PREFLIGHT_ENDPOINT_PATH)
+                .addHeader("Origin", CORS_TEST_ORIGIN)
+                .addHeader(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_METHOD, "GET")
+                .execute().returnResponse();
+
+        assertThat(response.getStatusLine().getStatusCode(), equalTo(204));
+        assertThat(response.getFirstHeader(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN).getValue(), equalTo(CORS_TEST_ORIGIN));
+        //the flow never ran, so its payload is not in the response
+        assertNull("The response should have no body", response.getEntity());
+
+        final HttpResponse actual = Request.Get("http://localhost:" + httpPort.getValue() + CORS_PREFLIGHT_ENDPOINT_PATH)
+                .addHeader("Origin", CORS_TEST_ORIGIN).execute().returnResponse();
+        assertNotNull("Allowed origin should be present", actual.getFirstHeader(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN));
+        assertThat(IOUtils.toString(actual.getEntity().getContent()), equalTo(EXPECTED_RETURN));
+    }
+
     @Test
     public void testPublicResource() throws Exception {
         //configure any origin
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mulesoft.modules.cors;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.mule.api.MuleContext;
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleMessage;
+import org.mule.api.config.MuleConfiguration;
+import org.mule.api.lifecycle.InitialisationException;
+import org.mule.api.store.ObjectStoreManager;
+import org.mule.module.http.api.HttpConstants;
+import org.mule.module.http.api.HttpHeaders;
+import org.mule.modules.cors.Constants;
+import org.mule.modules.cors.CorsStatistics;
+import org.mule.modules.cors.MuleCorsFilter;
+import org.mule.modules.cors.model.CompiledOrigin;
+import org.mule.modules.cors.model.CorsConfig;
+import org.mule.modules.cors.model.Origin;
+import org.mule.util.store.InMemoryObjectStore;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CorsStatisticsTest
+{
+
+    private static final String ORIGIN = "http://example.com";
+
+    private MuleContext muleContext;
+    private CorsConfig config;
+    private MuleCorsFilter filter;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        muleContext = mock(MuleContext.class);
+        MuleConfiguration muleConfiguration = mock(MuleConfiguration.class);
+        ObjectStoreManager objectStoreManager = mock(ObjectStoreManager.class);
+        when(muleContext.getConfiguration()).thenReturn(muleConfiguration);
+        when(muleConfiguration.getId()).thenReturn("app");
+        when(muleContext.getObjectStoreManager()).thenReturn(objectStoreManager);
+        when(objectStoreManager.getObjectStore(any(String.class))).thenReturn(new InMemoryObjectStore());
+
+        Origin origin = new Origin();
+        origin.setUrl(ORIGIN);
+        origin.setMethods(singletonList("GET"));
+        origin.setHeaders(singletonList("X-Allowed"));
+        config = new CorsConfig();
+        config.setMuleContext(muleContext);
+        config.setBeanName("statisticsConfig");
+        config.setOrigins(singletonList(origin));
+        config.initialise();
+
+        filter = new MuleCorsFilter(config, false, false);
+    }
+
+    @After
+    public void tearDown()
+    {
+        config.dispose();
+    }
+
+    @Test
+    public void countsDecisions()
+    {
+        filter.filter(event(null, "GET", null, null));
+        filter.filter(event(ORIGIN, "GET", null, null));
+        filter.filter(event(ORIGIN, "POST", null, null));
+        filter.filter(event("http://unknown.com", "GET", null, null));
+        filter.filter(event(ORIGIN, Constants.PREFLIGHT_METHOD, "GET", "X-Allowed"));
+        filter.filter(event(ORIGIN, Constants.PREFLIGHT_METHOD, "GET", "X-Other"));
+
+        CorsStatistics statistics = config.getStatistics();
+        assertThat(statistics.getNonCorsRequests(), is(1L));
+        assertThat(statistics.getAllowedRequests(), is(1L));
+        assertThat(statistics.getRejectedRequests(), is(2L));
+        assertThat(statistics.getUnsupportedMethodRequests(), is(1L));
+        assertThat(statistics.getPreflightRequests(), is(2L));
+        assertThat(statistics.getUnsupportedHeaderRequests(), is(1L));
+        assertThat(statistics.getPublicResourceRequests(), is(0L));
+        assertThat(statistics.getOriginHits().get(ORIGIN), is(4L));
+
+        statistics.reset();
+        assertThat(statistics.getPreflightRequests(), is(0L));
+        assertThat(statistics.getOriginHits().get(ORIGIN), is(0L));
+    }
+
+    @Test
+    public void countsHitsOfAnOriginFromConcurrentThreads() throws Exception
+    {
+        final CompiledOrigin origin = config.findCompiledOrigin(ORIGIN);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    for (int hit = 0; hit < 10000; hit++)
+                    {
+                        origin.recordHit();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        assertThat(config.getStatistics().getOriginHits().get(ORIGIN), is(40000L));
+        config.getStatistics().reset();
+        assertThat(config.getStatistics().getOriginHits().get(ORIGIN), is(0L));
+    }
+
+    @Test
+    public void registeredAsMBean() throws Exception
+    {
+        ObjectName name = new ObjectName("org.mule.modules.cors:type=CorsStatistics,app=\"app\",config=\"statisticsConfig\"");
+        filter.filter(event(ORIGIN, "GET", null, null));
+
+        assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "AllowedRequests"), is((Object) 1L));
+
+        config.dispose();
+        assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), is(false));
+    }
+
+    @Test
+    public void notRegisteredWhenInitialisationFails() throws Exception
+    {
+        ObjectName name = new ObjectName("org.mule.modules.cors:type=CorsStatistics,app=\"app\",config=\"failingConfig\"");
+        CorsConfig failing = new CorsConfig();
+        failing.setMuleContext(muleContext);
+        failing.setBeanName("failingConfig");
+        failing.setOriginsFile(new File("missing-origins.properties"));
+
+        try
+        {
+            failing.initialise();
+            fail("Initialised with a missing origins file");
+        }
+        catch (InitialisationException e)
+        {
+            assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), is(false));
+        }
+    }
+
+    private static MuleEvent event(String origin, String method, String requestMethod, String requestHeaders)
+    {
+        MuleMessage message = mock(MuleMessage.class);
+        when(message.getInboundProperty(HttpHeaders.Names.ORIGIN)).thenReturn(origin);
+        when(message.getInboundProperty(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY)).thenReturn(method);
+        when(message.getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_METHOD)).thenReturn(requestMethod);
+        when(message.getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_HEADERS)).thenReturn(requestHeaders);
+        MuleEvent event = mock(MuleEvent.class);
+        when(event.getMessage()).thenReturn(message);
+        return event;
+    }
+}
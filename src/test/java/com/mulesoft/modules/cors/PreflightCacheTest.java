@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mulesoft.modules.cors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.mule.module.http.api.HttpHeaders;
+import org.mule.modules.cors.CorsDecision;
+import org.mule.modules.cors.CorsHeaders;
+import org.mule.modules.cors.PreflightCache;
+
+import org.junit.Test;
+
+public class PreflightCacheTest
+{
+
+    private static final String ORIGIN = "http://example.com";
+
+    private final CorsDecision allowed = CorsDecision.preflight(false, null, CorsDecision.Refusal.NONE,
+                                                                CorsHeaders.builder().set(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, ORIGIN).build());
+    private final CorsDecision refused = CorsDecision.preflight(false, null, CorsDecision.Refusal.UNKNOWN_ORIGIN, CorsHeaders.EMPTY);
+
+    @Test
+    public void hitsAndMisses()
+    {
+        PreflightCache cache = new PreflightCache(10);
+        PreflightCache.Key key = new PreflightCache.Key(ORIGIN, "GET", "X-Custom");
+
+        assertThat(cache.get(key, 0), nullValue());
+        cache.put(key, allowed, 0);
+        assertThat(cache.get(new PreflightCache.Key(ORIGIN, "GET", "X-Custom"), 0), sameInstance(allowed));
+        assertThat(cache.get(new PreflightCache.Key(ORIGIN, "GET", "x-custom"), 0), nullValue());
+
+        assertThat(cache.getHitCount(), is(1L));
+        assertThat(cache.getMissCount(), is(2L));
+    }
+
+    @Test
+    public void invalidatedWhenOriginsChange()
+    {
+        PreflightCache cache = new PreflightCache(10);
+        PreflightCache.Key key = new PreflightCache.Key(ORIGIN, "GET", null);
+        cache.put(key, allowed, 0);
+
+        assertThat(cache.get(key, 1), nullValue());
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed()
+    {
+        PreflightCache cache = new PreflightCache(2);
+        PreflightCache.Key first = new PreflightCache.Key(ORIGIN, "GET", null);
+        PreflightCache.Key second = new PreflightCache.Key(ORIGIN, "PUT", null);
+        PreflightCache.Key third = new PreflightCache.Key(ORIGIN, "POST", null);
+
+        cache.put(first, allowed, 0);
+        cache.put(second, allowed, 0);
+        cache.get(first, 0);
+        cache.put(third, refused, 0);
+
+        assertThat(cache.get(second, 0), nullValue());
+        assertThat(cache.get(first, 0), sameInstance(allowed));
+        assertThat(cache.get(third, 0), sameInstance(refused));
+    }
+}
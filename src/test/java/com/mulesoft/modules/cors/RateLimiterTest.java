@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mulesoft.modules.cors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+import org.mule.modules.cors.RateLimiter;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class RateLimiterTest
+{
+
+    private static final String ORIGIN = "http://example.com";
+
+    @Test
+    public void burstThenRefused()
+    {
+        RateLimiter limiter = new RateLimiter(1, 3, 10);
+
+        assertThat(limiter.isLimited(ORIGIN), is(false));
+        assertThat(limiter.tryAcquire(ORIGIN), is(true));
+        assertThat(limiter.tryAcquire(ORIGIN), is(true));
+        assertThat(limiter.tryAcquire(ORIGIN), is(true));
+        assertThat(limiter.isLimited(ORIGIN), is(true));
+        assertThat(limiter.tryAcquire(ORIGIN), is(false));
+        assertThat(limiter.tryAcquire("http://other.example.com"), is(true));
+    }
+
+    @Test
+    public void refillsOverTime() throws Exception
+    {
+        RateLimiter limiter = new RateLimiter(50, 1, 10);
+
+        assertThat(limiter.tryAcquire(ORIGIN), is(true));
+        assertThat(limiter.tryAcquire(ORIGIN), is(false));
+        Thread.sleep(40);
+        assertThat(limiter.tryAcquire(ORIGIN), is(true));
+    }
+
+    @Test
+    public void clientsOfAnOriginAreLimitedApart()
+    {
+        RateLimiter limiter = new RateLimiter(1, 1, 10);
+
+        assertThat(limiter.tryAcquire(RateLimiter.key(ORIGIN, "/10.0.0.1")), is(true));
+        assertThat(limiter.tryAcquire(RateLimiter.key(ORIGIN, "/10.0.0.1")), is(false));
+        assertThat(limiter.tryAcquire(RateLimiter.key(ORIGIN, "/10.0.0.2")), is(true));
+    }
+
+    @Test
+    public void keysAreBounded()
+    {
+        RateLimiter limiter = new RateLimiter(1, 1, 16);
+
+        for (int i = 0; i < 100; i++)
+        {
+            limiter.tryAcquire("http://" + i + ".example.com");
+        }
+
+        assertThat(limiter.size(), lessThanOrEqualTo(16));
+    }
+
+    @Test
+    public void concurrentRequestsGetNoMoreThanTheBurst() throws Exception
+    {
+        final RateLimiter limiter = new RateLimiter(1, 100, 10);
+        final AtomicInteger acquired = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++)
+        {
+            threads[i] = new Thread()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        return;
+                    }
+                    for (int j = 0; j < 1000; j++)
+                    {
+                        if (limiter.tryAcquire(ORIGIN))
+                        {
+                            acquired.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        //the burst, plus at most one refill should the threads be slow enough
+        assertThat(acquired.get(), lessThanOrEqualTo(101));
+        assertThat(acquired.get() >= 100, is(true));
+    }
+
+    @Test
+    public void bucketsInUseAreNotEvicted()
+    {
+        RateLimiter limiter = new RateLimiter(1, 1, 16);
+
+        assertThat(limiter.tryAcquire(ORIGIN), is(true));
+        for (int i = 0; i < 100; i++)
+        {
+            limiter.tryAcquire("http://" + i + ".example.com");
+        }
+
+        assertThat(limiter.isLimited(ORIGIN), is(true));
+        assertThat(limiter.tryAcquire(ORIGIN), is(false));
+    }
+
+    @Test
+    public void saturatedLimiterLetsNewKeysThroughWithoutWalkingItsBuckets()
+    {
+        RateLimiter limiter = new RateLimiter(1, 1, 10000);
+        for (int i = 0; i < 10000; i++)
+        {
+            limiter.tryAcquire("http://in-use-" + i + ".example.com");
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < 100000; i++)
+        {
+            assertThat(limiter.tryAcquire("http://new-" + i + ".example.com"), is(true));
+        }
+        //walking the 10000 buckets for each new key takes several seconds
+        assertThat((System.nanoTime() - start) / 1000000, lessThan(2000L));
+        assertThat(limiter.size(), is(10000));
+        assertThat(limiter.tryAcquire("http://in-use-0.example.com"), is(false));
+    }
+
+    @Test
+    public void fullBucketsMakeRoomForNewKeys() throws Exception
+    {
+        RateLimiter limiter = new RateLimiter(50, 1, 16);
+
+        for (int i = 0; i < 16; i++)
+        {
+            limiter.tryAcquire("http://" + i + ".example.com");
+        }
+        Thread.sleep(40);
+
+        assertThat(limiter.tryAcquire(ORIGIN), is(true));
+        assertThat(limiter.isLimited(ORIGIN), is(true));
+    }
+
+    @Test
+    public void clientIsTheRemoteAddressWithoutItsPort()
+    {
+        assertThat(RateLimiter.client("/10.0.0.1:51234"), is("/10.0.0.1"));
+        assertThat(RateLimiter.client("/10.0.0.1"), is("/10.0.0.1"));
+        assertThat(RateLimiter.client("/[2001:db8::1]:51234"), is("/[2001:db8::1]"));
+        assertThat(RateLimiter.client("/[2001:db8::1]"), is("/[2001:db8::1]"));
+        assertThat(RateLimiter.client("/2001:db8:0:0:0:0:0:1:51234"), is("/2001:db8:0:0:0:0:0:1"));
+        assertThat(RateLimiter.client("/2001:db8:0:0:0:0:0:1"), is("/2001:db8:0:0:0:0:0:1"));
+        assertThat(RateLimiter.client("/2001:db8::1"), is("/2001:db8::1"));
+    }
+}
@@ -4,10 +4,14 @@ import static java.util.Collections.singletonList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 
 import org.mule.api.MuleContext;
 import org.mule.api.MuleException;
@@ -21,18 +25,37 @@ import org.mule.api.store.ObjectStoreException;
 import org.mule.api.store.ObjectStoreManager;
 import org.mule.module.http.api.HttpConstants;
 import org.mule.modules.cors.Constants;
+import org.mule.modules.cors.CorsStatistics;
+import org.mule.modules.cors.model.CompiledOrigin;
 import org.mule.modules.cors.model.CorsConfig;
 import org.mule.modules.cors.model.Origin;
+import org.mule.modules.cors.model.OriginStoreCache;
+import org.mule.modules.cors.model.OriginsStoreFailurePolicy;
 import org.mule.util.store.InMemoryObjectStore;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 import junit.framework.Assert;
 import org.hamcrest.Matchers;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class CorsConfigTest
 {
@@ -48,6 +71,9 @@ public class CorsConfigTest
     private CorsConfig corsConfig;
     private MuleConfiguration muleConfiguration;
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Before
     public void setUp()
     {
@@ -71,12 +97,24 @@ public class CorsConfigTest
     {
         ObjectStore objectStore = Mockito.mock(InMemoryObjectStore.class);
         doThrow(new ObjectAlreadyExistsException()).when(objectStore).store(any(Serializable.class), any(Origin.class));
+        corsConfig.setOriginsStore(objectStore);
+
+        corsConfig.initialise();
+
+        Mockito.verify(objectStore).store(any(Serializable.class), any(Origin.class));
+    }
+
+    @Test
+    public void createdObjectStoreIsNotWritten() throws Exception
+    {
+        ObjectStore objectStore = Mockito.mock(InMemoryObjectStore.class);
         Mockito.reset(objectStoreManager);
         Mockito.when(objectStoreManager.getObjectStore(any(String.class))).thenReturn(objectStore);
 
         corsConfig.initialise();
 
-        Mockito.verify(objectStore).store(any(Serializable.class), any(Origin.class));
+        Mockito.verify(objectStore, never()).store(any(Serializable.class), any(Origin.class));
+        assertThat(corsConfig.findOrigin(DOMAIN).getUrl(), is(DOMAIN));
     }
 
     @Test
@@ -118,4 +156,502 @@ public class CorsConfigTest
         assertThat(corsConfig, not(Matchers.<CorsConfig>instanceOf(Stoppable.class)));
         assertThat(corsConfig, not(Matchers.<CorsConfig>instanceOf(Startable.class)));
     }
+
+    @Test
+    public void findOriginDoesNotAccessObjectStore() throws MuleException
+    {
+        ObjectStore objectStore = Mockito.mock(InMemoryObjectStore.class);
+        Mockito.reset(objectStoreManager);
+        Mockito.when(objectStoreManager.getObjectStore(any(String.class))).thenReturn(objectStore);
+        corsConfig.initialise();
+        Mockito.reset(objectStore);
+
+        assertThat(corsConfig.findOrigin(DOMAIN).getUrl(), is(DOMAIN));
+        assertThat(corsConfig.findOrigin("http://unknown.com"), nullValue());
+        verifyZeroInteractions(objectStore);
+    }
+
+    @Test
+    public void sharedStoreIsListedInsteadOfQueriedPerOrigin() throws MuleException
+    {
+        Origin storedOrigin = new Origin();
+        storedOrigin.setUrl(DOMAIN);
+        storedOrigin.setMethods(singletonList("PUT"));
+        InMemoryObjectStore<Origin> objectStore = Mockito.spy(new InMemoryObjectStore<Origin>());
+        objectStore.store(storedOrigin.getUrl(), storedOrigin);
+        Mockito.reset(objectStore);
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.initialise();
+
+        verify(objectStore, times(1)).allKeys();
+        verify(objectStore, Mockito.never()).contains(DOMAIN);
+        assertThat(corsConfig.findOrigin(DOMAIN).getMethods(), is(singletonList("PUT")));
+    }
+
+    @Test
+    public void originFilterSkipsStoreForUnknownOrigins() throws MuleException
+    {
+        Origin storedOrigin = new Origin();
+        storedOrigin.setUrl("http://stored.com");
+        InMemoryObjectStore<Origin> objectStore = Mockito.spy(new InMemoryObjectStore<Origin>());
+        objectStore.store(storedOrigin.getUrl(), storedOrigin);
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginFilterFalsePositiveRate(0.01);
+        corsConfig.initialise();
+        Mockito.reset(objectStore);
+
+        assertThat(corsConfig.findOrigin("http://unknown.com"), nullValue());
+        verifyZeroInteractions(objectStore);
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getUrl(), is(storedOrigin.getUrl()));
+    }
+
+    @Test
+    public void originFilterIsRebuiltWhenStoreChanges() throws Exception
+    {
+        InMemoryObjectStore<Origin> objectStore = new InMemoryObjectStore<Origin>();
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginFilterFalsePositiveRate(0.0001);
+        corsConfig.initialise();
+        Origin added = new Origin();
+        added.setUrl("http://added.com");
+        objectStore.store(added.getUrl(), added);
+        assertThat(corsConfig.findOrigin(added.getUrl()), nullValue());
+        long version = corsConfig.getOriginsVersion();
+
+        corsConfig.originsStoreChanged();
+        awaitVersionChange(version);
+
+        assertThat(corsConfig.findOrigin(added.getUrl()).getUrl(), is(added.getUrl()));
+        corsConfig.dispose();
+    }
+
+    @Test
+    public void originFilterIsRebuiltWhenAnotherNodeChangesStore() throws Exception
+    {
+        InMemoryObjectStore<Origin> objectStore = new InMemoryObjectStore<Origin>();
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginFilterFalsePositiveRate(0.0001);
+        corsConfig.setOriginsCacheCheckInterval(10);
+        corsConfig.initialise();
+        long version = corsConfig.getOriginsVersion();
+
+        CorsConfig otherNode = new CorsConfig();
+        otherNode.setMuleContext(muleContext);
+        otherNode.setOriginsStore(objectStore);
+        otherNode.initialise();
+        Origin added = new Origin();
+        added.setUrl("http://added.com");
+        objectStore.store(added.getUrl(), added);
+        otherNode.originsStoreChanged();
+        awaitVersionChange(version);
+
+        assertThat(corsConfig.findOrigin(added.getUrl()).getUrl(), is(added.getUrl()));
+        corsConfig.dispose();
+        otherNode.dispose();
+    }
+
+    @Test
+    public void originsCacheKeepsStoreLookupsLocal() throws MuleException
+    {
+        Origin storedOrigin = new Origin();
+        storedOrigin.setUrl("http://stored.com");
+        InMemoryObjectStore<Origin> objectStore = Mockito.spy(new InMemoryObjectStore<Origin>());
+        objectStore.store(storedOrigin.getUrl(), storedOrigin);
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginsCacheSize(10);
+        corsConfig.initialise();
+
+        for (int i = 0; i < 3; i++)
+        {
+            assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getUrl(), is(storedOrigin.getUrl()));
+            assertThat(corsConfig.findOrigin("http://unknown.com"), nullValue());
+        }
+        verify(objectStore, times(1)).retrieve(storedOrigin.getUrl());
+        verify(objectStore, times(1)).retrieve("http://unknown.com");
+    }
+
+    @Test
+    public void originsCacheDroppedWhenStoreChanges() throws Exception
+    {
+        InMemoryObjectStore<Origin> objectStore = new InMemoryObjectStore<Origin>();
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginsCacheSize(10);
+        corsConfig.setOriginsCacheCheckInterval(0);
+        corsConfig.initialise();
+        assertThat(corsConfig.findOrigin("http://added.com"), nullValue());
+        long version = corsConfig.getOriginsVersion();
+
+        //another node adds an origin to the shared store
+        CorsConfig otherNode = new CorsConfig();
+        otherNode.setMuleContext(muleContext);
+        otherNode.setOriginsStore(objectStore);
+        otherNode.initialise();
+        Origin added = new Origin();
+        added.setUrl("http://added.com");
+        objectStore.store(added.getUrl(), added);
+        otherNode.originsStoreChanged();
+
+        assertThat(corsConfig.findOrigin("http://added.com").getUrl(), is("http://added.com"));
+        assertThat(corsConfig.getOriginsVersion(), not(version));
+    }
+
+    @Test
+    public void originsCacheEntriesExpire() throws Exception
+    {
+        Origin storedOrigin = new Origin();
+        storedOrigin.setUrl("http://stored.com");
+        InMemoryObjectStore<Origin> objectStore = Mockito.spy(new InMemoryObjectStore<Origin>());
+        objectStore.store(storedOrigin.getUrl(), storedOrigin);
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginsCacheSize(10);
+        corsConfig.setOriginsCacheTtl(60000);
+        corsConfig.setOriginsCacheNegativeTtl(100);
+        corsConfig.initialise();
+
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getUrl(), is(storedOrigin.getUrl()));
+        assertThat(corsConfig.findOrigin("http://unknown.com"), nullValue());
+        Thread.sleep(200);
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getUrl(), is(storedOrigin.getUrl()));
+        assertThat(corsConfig.findOrigin("http://unknown.com"), nullValue());
+
+        verify(objectStore, times(1)).retrieve(storedOrigin.getUrl());
+        verify(objectStore, times(2)).retrieve("http://unknown.com");
+        corsConfig.dispose();
+    }
+
+    @Test
+    public void originsCacheRefreshesRequestedOriginsAhead() throws Exception
+    {
+        Origin storedOrigin = new Origin();
+        storedOrigin.setUrl("http://stored.com");
+        storedOrigin.setMethods(singletonList("GET"));
+        InMemoryObjectStore<Origin> objectStore = Mockito.spy(new InMemoryObjectStore<Origin>());
+        objectStore.store(storedOrigin.getUrl(), storedOrigin);
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginsCacheSize(10);
+        corsConfig.setOriginsCacheTtl(60000);
+        corsConfig.setOriginsCacheRefreshAhead(59900);
+        corsConfig.initialise();
+
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getMethods(), is(singletonList("GET")));
+        Origin updated = new Origin();
+        updated.setUrl(storedOrigin.getUrl());
+        updated.setMethods(singletonList("PUT"));
+        objectStore.remove(storedOrigin.getUrl());
+        objectStore.store(updated.getUrl(), updated);
+        Thread.sleep(200);
+
+        //served from the cache while it is reloaded in the background
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getMethods(), is(singletonList("GET")));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!corsConfig.findOrigin(storedOrigin.getUrl()).getMethods().equals(singletonList("PUT")) && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(20);
+        }
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getMethods(), is(singletonList("PUT")));
+        corsConfig.dispose();
+    }
+
+    @Test(expected = InitialisationException.class)
+    public void rejectionStatusMustBeAnHttpStatus() throws Exception
+    {
+        corsConfig.setRejectionStatus(42);
+        corsConfig.initialise();
+    }
+
+    @Test(expected = InitialisationException.class)
+    public void rateLimitMayNotBeNegative() throws Exception
+    {
+        corsConfig.setPreflightRateLimit(-1);
+        corsConfig.initialise();
+    }
+
+    @Test(expected = InitialisationException.class)
+    public void originsCacheRefreshAheadMustBeShorterThanTtl() throws Exception
+    {
+        corsConfig.setOriginsStore(new InMemoryObjectStore<Origin>());
+        corsConfig.setOriginsCacheSize(10);
+        corsConfig.setOriginsCacheTtl(1000);
+        corsConfig.setOriginsCacheRefreshAhead(1000);
+        corsConfig.initialise();
+    }
+
+    @Test
+    public void versionStampIsOnlyWrittenForNodesCachingTheStore() throws Exception
+    {
+        InMemoryObjectStore<Origin> objectStore = new InMemoryObjectStore<Origin>();
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.initialise();
+        assertThat(objectStore.contains(OriginStoreCache.VERSION_KEY), is(false));
+        corsConfig.dispose();
+
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginsCacheSize(10);
+        corsConfig.initialise();
+        assertThat(objectStore.contains(OriginStoreCache.VERSION_KEY), is(true));
+        corsConfig.dispose();
+    }
+
+    @Test
+    public void preflightCacheNeedsStoreChangesToBeNoticed() throws Exception
+    {
+        corsConfig.initialise();
+        assertThat(corsConfig.isPreflightCacheSupported(), is(true));
+        corsConfig.dispose();
+
+        corsConfig.setOriginsStore(new InMemoryObjectStore<Origin>());
+        corsConfig.initialise();
+        assertThat(corsConfig.isPreflightCacheSupported(), is(false));
+        corsConfig.dispose();
+
+        corsConfig.setOriginsStore(new InMemoryObjectStore<Origin>());
+        corsConfig.setOriginsCacheSize(10);
+        corsConfig.initialise();
+        assertThat(corsConfig.isPreflightCacheSupported(), is(true));
+        corsConfig.dispose();
+
+        corsConfig.setOriginsStore(new InMemoryObjectStore<Origin>());
+        corsConfig.setOriginsCacheTtl(1000);
+        corsConfig.initialise();
+        assertThat(corsConfig.isPreflightCacheSupported(), is(false));
+        corsConfig.dispose();
+    }
+
+    @Test
+    public void concurrentMissesOfAnOriginReadTheStoreOnce() throws Exception
+    {
+        Origin storedOrigin = new Origin();
+        storedOrigin.setUrl("http://stored.com");
+        InMemoryObjectStore<Origin> objectStore = Mockito.spy(new InMemoryObjectStore<Origin>());
+        objectStore.store(storedOrigin.getUrl(), storedOrigin);
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginsCacheSize(10);
+        corsConfig.initialise();
+
+        final AtomicReference<CountDownLatch> release = new AtomicReference<CountDownLatch>();
+        Mockito.doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                release.get().await();
+                return invocation.callRealMethod();
+            }
+        }).when(objectStore).retrieve(storedOrigin.getUrl());
+
+        ExecutorService threads = Executors.newFixedThreadPool(32);
+        for (int window = 1; window <= 2; window++)
+        {
+            release.set(new CountDownLatch(1));
+            long coalesced = corsConfig.getOriginStoreGuard().getCoalescedReads();
+            List<Future<Origin>> lookups = new ArrayList<Future<Origin>>();
+            for (int i = 0; i < 32; i++)
+            {
+                lookups.add(threads.submit(new Callable<Origin>()
+                {
+                    @Override
+                    public Origin call()
+                    {
+                        return corsConfig.findOrigin("http://stored.com");
+                    }
+                }));
+            }
+            //every lookup is waiting for the first one before the store answers
+            long deadline = System.currentTimeMillis() + 10000;
+            while (corsConfig.getOriginStoreGuard().getCoalescedReads() - coalesced < 31 && System.currentTimeMillis() < deadline)
+            {
+                Thread.sleep(5);
+            }
+            release.get().countDown();
+            for (Future<Origin> lookup : lookups)
+            {
+                assertThat(lookup.get().getUrl(), is("http://stored.com"));
+            }
+            verify(objectStore, times(window)).retrieve(storedOrigin.getUrl());
+
+            //the next window starts once the cached origins are dropped
+            corsConfig.originsStoreChanged();
+        }
+        threads.shutdown();
+        corsConfig.dispose();
+    }
+
+    @Test
+    public void unavailableStoreAnswersWithLastKnownOrigins() throws Exception
+    {
+        Origin storedOrigin = new Origin();
+        storedOrigin.setUrl("http://stored.com");
+        storedOrigin.setMethods(singletonList("GET"));
+        InMemoryObjectStore<Origin> objectStore = Mockito.spy(new InMemoryObjectStore<Origin>());
+        objectStore.store(storedOrigin.getUrl(), storedOrigin);
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginsStoreFailureThreshold(1);
+        corsConfig.initialise();
+
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getMethods(), is(singletonList("GET")));
+        assertThat(corsConfig.findOrigin("http://unknown.com"), nullValue());
+        doThrow(new ObjectStoreException()).when(objectStore).retrieve(any(Serializable.class));
+
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getMethods(), is(singletonList("GET")));
+        assertThat(corsConfig.findOrigin("http://unknown.com"), nullValue());
+        assertThat(corsConfig.findOrigin("http://new.com"), nullValue());
+
+        CorsStatistics statistics = corsConfig.getStatistics();
+        assertThat(statistics.getOriginsStoreState(), is("OPEN"));
+        assertThat(statistics.getOriginsStoreFailures(), is(1L));
+        //origins not found are followed by a lookup of the default origin
+        assertThat(statistics.getOriginsStoreRejections(), is(4L));
+        assertThat(statistics.getStaleOriginAnswers(), is(4L));
+        assertThat(statistics.getFailurePolicyAnswers(), is(1L));
+        corsConfig.dispose();
+    }
+
+    @Test
+    public void lastKnownOriginFollowsChangedRules() throws Exception
+    {
+        Origin storedOrigin = new Origin();
+        storedOrigin.setUrl("http://stored.com");
+        storedOrigin.setMethods(singletonList("GET"));
+        InMemoryObjectStore<Origin> objectStore = Mockito.spy(new InMemoryObjectStore<Origin>());
+        objectStore.store(storedOrigin.getUrl(), storedOrigin);
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.initialise();
+
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getMethods(), is(singletonList("GET")));
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getMethods(), is(singletonList("GET")));
+        storedOrigin.setMethods(singletonList("POST"));
+        objectStore.remove(storedOrigin.getUrl());
+        objectStore.store(storedOrigin.getUrl(), storedOrigin);
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getMethods(), is(singletonList("POST")));
+        doThrow(new ObjectStoreException()).when(objectStore).retrieve(any(Serializable.class));
+
+        assertThat(corsConfig.findOrigin(storedOrigin.getUrl()).getMethods(), is(singletonList("POST")));
+        assertThat(corsConfig.getStatistics().getStaleOriginAnswers(), is(1L));
+        corsConfig.dispose();
+    }
+
+    @Test
+    public void failOpenAllowsOriginsWhileStoreIsUnavailable() throws Exception
+    {
+        InMemoryObjectStore<Origin> objectStore = Mockito.spy(new InMemoryObjectStore<Origin>());
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginsStoreFailurePolicy(OriginsStoreFailurePolicy.FAIL_OPEN);
+        corsConfig.initialise();
+        doThrow(new ObjectStoreException()).when(objectStore).retrieve(any(Serializable.class));
+
+        CompiledOrigin origin = corsConfig.findCompiledOrigin("http://new.com");
+        assertThat(origin.getAllowOriginValue("http://new.com"), is("http://new.com"));
+        assertThat(origin.getPolicy().isSupportedMethod("DELETE"), is(true));
+        assertThat(origin.getPolicy().isSupportedRequestHeaders("Content-Type, X-Custom"), is(true));
+        assertThat(origin.getPolicy().getAccessControlMaxAge(), nullValue());
+        assertThat(corsConfig.findCompiledOrigin("http://other.com"), sameInstance(origin));
+        assertThat(origin.getAllowOriginValue("http://other.com"), is("http://other.com"));
+        corsConfig.dispose();
+    }
+
+    @Test
+    public void originsFileIsReloadedWhenItChanges() throws Exception
+    {
+        File originsFile = temporaryFolder.newFile("origins.properties");
+        write(originsFile, "origin.file.url=http://file.com\norigin.file.methods=GET\n");
+        corsConfig.setOriginsFile(originsFile);
+        corsConfig.initialise();
+
+        assertThat(corsConfig.findOrigin("http://file.com").getMethods().contains("GET"), is(true));
+        assertThat(corsConfig.findOrigin(DOMAIN).getUrl(), is(DOMAIN));
+
+        long version = corsConfig.getOriginsVersion();
+        write(originsFile, "origin.file.url=http://reloaded.com\n");
+        awaitVersionChange(version);
+
+        assertThat(corsConfig.findOrigin("http://file.com"), nullValue());
+        assertThat(corsConfig.findOrigin("http://reloaded.com").getUrl(), is("http://reloaded.com"));
+        assertThat(corsConfig.findOrigin(DOMAIN).getUrl(), is(DOMAIN));
+        corsConfig.dispose();
+    }
+
+    @Test
+    public void invalidOriginsFileKeepsCurrentOrigins() throws Exception
+    {
+        File originsFile = temporaryFolder.newFile("origins.properties");
+        write(originsFile, "origin.file.url=http://file.com\n");
+        corsConfig.setOriginsFile(originsFile);
+        corsConfig.initialise();
+
+        long version = corsConfig.getOriginsVersion();
+        write(originsFile, "origin.file.unknown=value\n");
+        write(new File(originsFile.getParentFile(), "marker.properties"), "");
+        Thread.sleep(1000);
+
+        assertThat(corsConfig.getOriginsVersion(), is(version));
+        assertThat(corsConfig.findOrigin("http://file.com").getUrl(), is("http://file.com"));
+        corsConfig.dispose();
+    }
+
+    @Test
+    public void configuredOriginsFollowChangesOfAnotherNode() throws Exception
+    {
+        InMemoryObjectStore<Origin> objectStore = new InMemoryObjectStore<Origin>();
+        corsConfig.setOriginsStore(objectStore);
+        corsConfig.setOriginsCacheCheckInterval(10);
+        corsConfig.initialise();
+        assertThat(corsConfig.findOrigin(DOMAIN).getMethods(), is(singletonList(GET_METHOD)));
+
+        CorsConfig otherNode = new CorsConfig();
+        otherNode.setMuleContext(muleContext);
+        otherNode.setOriginsStore(objectStore);
+        otherNode.initialise();
+        Origin updated = new Origin();
+        updated.setUrl(DOMAIN);
+        updated.setMethods(singletonList("PUT"));
+        objectStore.remove(DOMAIN);
+        objectStore.store(DOMAIN, updated);
+        otherNode.originsStoreChanged();
+        awaitOrigin(DOMAIN, updated);
+
+        objectStore.remove(DOMAIN);
+        otherNode.originsStoreChanged();
+        awaitOrigin(DOMAIN, null);
+        corsConfig.dispose();
+        otherNode.dispose();
+    }
+
+    private void awaitOrigin(String url, Origin expected) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (!matches(corsConfig.findOrigin(url), expected) && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(50);
+        }
+        Origin found = corsConfig.findOrigin(url);
+        assertThat(found == null ? null : found.getMethods(), is(expected == null ? null : expected.getMethods()));
+    }
+
+    private static boolean matches(Origin found, Origin expected)
+    {
+        return found == null ? expected == null : expected != null && found.getMethods().equals(expected.getMethods());
+    }
+
+    private void awaitVersionChange(long version) throws InterruptedException
+    {
+        long deadline = System.currentTimeMillis() + 30000;
+        while (corsConfig.getOriginsVersion() == version && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(50);
+        }
+        assertThat(corsConfig.getOriginsVersion(), not(version));
+    }
+
+    private static void write(File file, String content) throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try
+        {
+            out.write(content.getBytes("UTF-8"));
+        }
+        finally
+        {
+            out.close();
+        }
+    }
 }
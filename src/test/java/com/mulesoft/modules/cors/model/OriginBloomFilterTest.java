@@ -0,0 +1,79 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mulesoft.modules.cors.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import org.mule.modules.cors.model.OriginBloomFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class OriginBloomFilterTest
+{
+
+    private static final int ORIGINS = 10000;
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+
+    @Test
+    public void containsEveryAddedOrigin()
+    {
+        OriginBloomFilter filter = new OriginBloomFilter(origins("https://known-"), FALSE_POSITIVE_RATE);
+
+        for (String origin : origins("https://known-"))
+        {
+            assertThat(filter.mightContain(origin), is(true));
+        }
+        assertThat(filter.getInsertions(), is(ORIGINS));
+    }
+
+    @Test
+    public void rejectsMostUnknownOrigins()
+    {
+        OriginBloomFilter filter = new OriginBloomFilter(origins("https://known-"), FALSE_POSITIVE_RATE);
+
+        int falsePositives = 0;
+        for (String origin : origins("https://unknown-"))
+        {
+            if (filter.mightContain(origin))
+            {
+                falsePositives++;
+            }
+        }
+        assertThat((double) falsePositives / ORIGINS, lessThan(FALSE_POSITIVE_RATE * 2));
+        assertThat(filter.getExpectedFalsePositiveRate(), lessThan(FALSE_POSITIVE_RATE * 1.1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidFalsePositiveRate()
+    {
+        new OriginBloomFilter(origins("https://known-"), 1);
+    }
+
+    private static List<String> origins(String prefix)
+    {
+        List<String> origins = new ArrayList<String>(ORIGINS);
+        for (int i = 0; i < ORIGINS; i++)
+        {
+            origins.add(prefix + i + ".example.com");
+        }
+        return origins;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mulesoft.modules.cors.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.mule.modules.cors.model.CompiledOrigin;
+import org.mule.modules.cors.model.Origin;
+import org.mule.modules.cors.model.OriginIndex;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class OriginIndexTest
+{
+
+    private static final String TENANT_PATTERN = "https://*.tenant.example.com";
+    private static final String DOMAIN_PATTERN = "https://*.example.com";
+    private static final String EXACT = "https://exact.tenant.example.com";
+    private static final String PORT_PATTERN = "http://*.local:8080";
+
+    private final OriginIndex index = new OriginIndex(Arrays.asList(origin(TENANT_PATTERN), origin(DOMAIN_PATTERN),
+                                                                    origin(EXACT), origin(PORT_PATTERN)));
+
+    @Test
+    public void wildcardMatchesSubdomains()
+    {
+        assertMatch("https://a.tenant.example.com", TENANT_PATTERN);
+        assertMatch("https://a.b.tenant.example.com", TENANT_PATTERN);
+    }
+
+    @Test
+    public void mostSpecificWildcardWins()
+    {
+        assertMatch("https://tenant.example.com", DOMAIN_PATTERN);
+        assertMatch("https://other.example.com", DOMAIN_PATTERN);
+    }
+
+    @Test
+    public void exactMatchWinsOverWildcard()
+    {
+        assertMatch(EXACT, EXACT);
+    }
+
+    @Test
+    public void wildcardRequiresSubdomain()
+    {
+        assertThat(index.get("https://example.com"), nullValue());
+    }
+
+    @Test
+    public void schemeAndPortMustMatch()
+    {
+        assertThat(index.get("http://a.tenant.example.com"), nullValue());
+        assertMatch("http://a.local:8080", PORT_PATTERN);
+        assertThat(index.get("http://a.local"), nullValue());
+        assertThat(index.get("http://a.local:8081"), nullValue());
+    }
+
+    @Test
+    public void wildcardEchoesRequestOrigin()
+    {
+        String requestOrigin = "https://a.tenant.example.com";
+        assertThat(index.get(requestOrigin).getAllowOriginValue(requestOrigin), is(requestOrigin));
+        assertThat(index.get(EXACT).getAllowOriginValue(EXACT), is(EXACT));
+    }
+
+    private void assertMatch(String requestOrigin, String expectedUrl)
+    {
+        CompiledOrigin match = index.get(requestOrigin);
+        assertThat(match.getUrl(), is(expectedUrl));
+    }
+
+    private static Origin origin(String url)
+    {
+        Origin origin = new Origin();
+        origin.setUrl(url);
+        return origin;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mulesoft.modules.cors.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import org.mule.modules.cors.model.CompiledOrigin;
+import org.mule.modules.cors.model.HttpMethods;
+import org.mule.modules.cors.model.Origin;
+import org.mule.modules.cors.model.OriginPolicy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class OriginPolicyTest
+{
+
+    private static final String[] STANDARD_METHODS = {"GET", "HEAD", "POST", "PUT", "DELETE", "CONNECT", "OPTIONS", "TRACE", "PATCH"};
+
+    @Test
+    public void everyStandardMethodHasItsOwnBit()
+    {
+        int all = 0;
+        for (String method : STANDARD_METHODS)
+        {
+            int bit = HttpMethods.bit(method);
+            assertThat(Integer.bitCount(bit), is(1));
+            assertThat(all & bit, is(0));
+            all |= bit;
+        }
+        assertThat(HttpMethods.bit("get"), is(0));
+        assertThat(HttpMethods.bit("GOT"), is(0));
+        assertThat(HttpMethods.bit("PROPFIND"), is(0));
+        assertThat(HttpMethods.bit(null), is(0));
+    }
+
+    @Test
+    public void supportedMethods()
+    {
+        OriginPolicy policy = policy("GET", "POST", "PROPFIND");
+
+        assertThat(policy.isSupportedMethod("GET"), is(true));
+        assertThat(policy.isSupportedMethod("POST"), is(true));
+        assertThat(policy.isSupportedMethod("PROPFIND"), is(true));
+        assertThat(policy.isSupportedMethod("PUT"), is(false));
+        assertThat(policy.isSupportedMethod("get"), is(false));
+        assertThat(policy.isSupportedMethod("MKCOL"), is(false));
+        assertThat(policy.isSupportedMethod(null), is(false));
+    }
+
+    @Test
+    public void noMethods()
+    {
+        OriginPolicy policy = policy();
+
+        assertThat(policy.hasMethods(), is(false));
+        assertThat(policy.isSupportedMethod("GET"), is(false));
+    }
+
+    @Test
+    public void poolSharesEqualPolicies()
+    {
+        OriginPolicy.Pool pool = new OriginPolicy.Pool();
+        Origin first = origin("http://first.com", "GET", "POST");
+        Origin second = origin("http://second.com", "GET", "POST");
+        Origin other = origin("http://other.com", "GET", "POST");
+        other.setAccessControlMaxAge(600L);
+
+        OriginPolicy policy = pool.compile(first);
+        first.getMethods().add("PUT");
+
+        assertThat(pool.compile(second), is(sameInstance(policy)));
+        assertThat(pool.compile(other), is(not(sameInstance(policy))));
+        assertThat(pool.size(), is(2));
+        assertThat(policy.isSupportedMethod("PUT"), is(false));
+    }
+
+    @Test
+    public void compiledOriginCopiesBackToOrigin()
+    {
+        Origin origin = origin("http://example.com", "GET");
+        origin.setHeaders(new ArrayList<String>(Arrays.asList("X-Allowed")));
+        origin.setAccessControlMaxAge(600L);
+
+        Origin copy = CompiledOrigin.compile(origin).toOrigin();
+
+        assertThat(copy.getUrl(), is(origin.getUrl()));
+        assertThat(copy.getMethods(), is(origin.getMethods()));
+        assertThat(copy.getHeaders(), is(origin.getHeaders()));
+        assertThat(copy.getExposeHeaders(), is(empty()));
+        assertThat(copy.getAccessControlMaxAge(), is(600L));
+        copy.getMethods().add("POST");
+    }
+
+    @Test
+    public void starHeaderIsJustAHeaderName()
+    {
+        Origin origin = origin("http://example.com", "GET");
+        origin.setHeaders(new ArrayList<String>(Arrays.asList("X-Custom", "*")));
+        OriginPolicy policy = OriginPolicy.compile(origin);
+        assertThat(policy.isAnyHeaderSupported(), is(false));
+        assertThat(policy.isSupportedRequestHeaders("X-Custom, X-Other"), is(false));
+        assertThat(policy.isSupportedRequestHeaders("X-Custom, *"), is(true));
+    }
+
+    private static OriginPolicy policy(String... methods)
+    {
+        return OriginPolicy.compile(origin("http://example.com", methods));
+    }
+
+    private static Origin origin(String url, String... methods)
+    {
+        Origin origin = new Origin();
+        origin.setUrl(url);
+        origin.setMethods(new ArrayList<String>(Arrays.asList(methods)));
+        return origin;
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mulesoft.modules.cors.model;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+import org.mule.modules.cors.model.Origin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+public class OriginSerializationTest
+{
+
+    //an origin serialized in the default form by earlier versions of the module
+    private static final String LEGACY_ORIGIN = "/legacy-origin.ser";
+
+    @Test
+    public void roundTrip() throws Exception
+    {
+        Origin origin = new Origin();
+        origin.setUrl("https://app.example.com");
+        origin.setMethods(new ArrayList<String>(asList("PUT", "GET", "PROPFIND", "PATCH")));
+        origin.setHeaders(new ArrayList<String>(asList("Content-Type", "X-Ünicode")));
+        origin.setExposeHeaders(new ArrayList<String>());
+        origin.setAccessControlMaxAge(600L);
+
+        Origin read = read(write(origin));
+
+        assertThat(read.getUrl(), is("https://app.example.com"));
+        assertThat(read.getMethods(), is(asList("PUT", "GET", "PROPFIND", "PATCH")));
+        assertThat(read.getHeaders(), is(asList("Content-Type", "X-Ünicode")));
+        assertThat(read.getExposeHeaders().isEmpty(), is(true));
+        assertThat(read.getAccessControlMaxAge(), is(600L));
+        assertThat(read.getMethods(), instanceOf(ArrayList.class));
+    }
+
+    @Test
+    public void roundTripWithoutValues() throws Exception
+    {
+        Origin origin = new Origin();
+        origin.setMethods(null);
+        origin.setHeaders(null);
+
+        Origin read = read(write(origin));
+
+        assertThat(read.getUrl(), nullValue());
+        assertThat(read.getMethods(), nullValue());
+        assertThat(read.getHeaders(), nullValue());
+        assertThat(read.getExposeHeaders().isEmpty(), is(true));
+        assertThat(read.getAccessControlMaxAge(), nullValue());
+    }
+
+    @Test
+    public void originsStoredByEarlierVersionsAreRead() throws Exception
+    {
+        byte[] legacy = legacyOrigin();
+        Origin read = read(legacy);
+
+        assertThat(read.getUrl(), is("https://app-42.example.com"));
+        assertThat(read.getMethods(), is(asList("GET", "POST", "PUT", "DELETE")));
+        assertThat(read.getHeaders(), is(asList("Content-Type", "Authorization", "X-Requested-With")));
+        assertThat(read.getExposeHeaders(), is(asList("X-Request-Id")));
+        assertThat(read.getAccessControlMaxAge(), is(600L));
+
+        //and written back in the compact form
+        assertThat(write(read).length, lessThan(legacy.length / 2));
+    }
+
+    private static byte[] legacyOrigin() throws IOException
+    {
+        InputStream in = OriginSerializationTest.class.getResourceAsStream(LEGACY_ORIGIN);
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[512];
+            for (int read = in.read(buffer); read != -1; read = in.read(buffer))
+            {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private static byte[] write(Origin origin) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(origin);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    private static Origin read(byte[] bytes) throws Exception
+    {
+        return (Origin) new ObjectInputStream(new ByteArrayInputStream(bytes)).readObject();
+    }
+}
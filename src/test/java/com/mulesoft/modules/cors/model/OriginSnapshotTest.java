@@ -0,0 +1,156 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mulesoft.modules.cors.model;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+
+import org.mule.api.MuleContext;
+import org.mule.api.config.MuleConfiguration;
+import org.mule.api.store.ObjectStoreManager;
+import org.mule.modules.cors.model.CompiledOrigin;
+import org.mule.modules.cors.model.CorsConfig;
+import org.mule.modules.cors.model.Origin;
+import org.mule.modules.cors.model.OriginSnapshot;
+import org.mule.modules.cors.model.OriginSnapshotWriter;
+import org.mule.util.store.InMemoryObjectStore;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+public class OriginSnapshotTest
+{
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void findsExactOrigins() throws Exception
+    {
+        List<Origin> origins = new ArrayList<Origin>();
+        for (int i = 0; i < 1000; i++)
+        {
+            origins.add(origin("https://app-" + i + ".example.com", i % 2 == 0 ? "GET" : "PUT"));
+        }
+        origins.add(origin("https://bücher.example.com", "POST"));
+        OriginSnapshot snapshot = OriginSnapshot.open(write(origins));
+
+        assertThat(snapshot.size(), is(1001));
+        assertThat(snapshot.getPolicyCount(), is(3));
+        for (int i = 0; i < 1000; i++)
+        {
+            CompiledOrigin found = snapshot.find("https://app-" + i + ".example.com");
+            assertThat(found.getUrl(), is("https://app-" + i + ".example.com"));
+            assertThat(found.getPolicy().getMethods(), is(asList(i % 2 == 0 ? "GET" : "PUT")));
+        }
+        assertThat(snapshot.find("https://bücher.example.com").getPolicy().getMethods(), is(asList("POST")));
+        assertThat(snapshot.find("https://bucher.example.com"), nullValue());
+        assertThat(snapshot.find("https://app-1000.example.com"), nullValue());
+        assertThat(snapshot.find("https://app-1.example.co"), nullValue());
+        assertThat(snapshot.find(null), nullValue());
+    }
+
+    @Test
+    public void patternsAreKeptApart() throws Exception
+    {
+        OriginSnapshot snapshot = OriginSnapshot.open(write(asList(origin("https://*.tenant.example.com", "GET"),
+                                                                   origin("*", "HEAD"),
+                                                                   origin("https://app.example.com", "GET"))));
+
+        assertThat(snapshot.size(), is(1));
+        assertThat(snapshot.getPatternOrigins().size(), is(2));
+        assertThat(snapshot.getPatternOrigins().get(0).getUrl(), is("https://*.tenant.example.com"));
+        assertThat(snapshot.getPatternOrigins().get(1).getMethods(), is(asList("HEAD")));
+        assertThat(snapshot.find("*"), nullValue());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOtherFiles() throws Exception
+    {
+        File file = temporaryFolder.newFile();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[64]);
+        out.close();
+        OriginSnapshot.open(file);
+    }
+
+    @Test
+    public void configuredOriginsTakePrecedence() throws Exception
+    {
+        File file = write(asList(origin("https://app.example.com", "GET"), origin("https://partner.example.com", "GET"),
+                                 origin("https://*.partner.example.com", "PUT")));
+        MuleContext muleContext = Mockito.mock(MuleContext.class);
+        MuleConfiguration muleConfiguration = Mockito.mock(MuleConfiguration.class);
+        ObjectStoreManager objectStoreManager = Mockito.mock(ObjectStoreManager.class);
+        Mockito.when(muleContext.getConfiguration()).thenReturn(muleConfiguration);
+        Mockito.when(muleConfiguration.getId()).thenReturn("app");
+        Mockito.when(muleContext.getObjectStoreManager()).thenReturn(objectStoreManager);
+        Mockito.when(objectStoreManager.getObjectStore(any(String.class))).thenReturn(new InMemoryObjectStore());
+        CorsConfig config = new CorsConfig();
+        config.setMuleContext(muleContext);
+        config.setOrigins(Collections.singletonList(origin("https://app.example.com", "DELETE")));
+        config.setOriginsSnapshot(file);
+        config.initialise();
+
+        assertThat(config.findOrigin("https://app.example.com").getMethods(), is(asList("DELETE")));
+        assertThat(config.findOrigin("https://partner.example.com").getMethods(), is(asList("GET")));
+        assertThat(config.findOrigin("https://eu.partner.example.com").getMethods(), is(asList("PUT")));
+        assertThat(config.findOrigin("https://other.example.com"), nullValue());
+        config.dispose();
+    }
+
+    @Test
+    public void foundOriginsAreDecodedOnce() throws Exception
+    {
+        OriginSnapshot snapshot = OriginSnapshot.open(write(asList(origin("https://app.example.com", "GET"))));
+
+        CompiledOrigin found = snapshot.find("https://app.example.com");
+        found.recordHit();
+
+        assertThat(snapshot.find("https://app.example.com"), sameInstance(found));
+        assertThat(snapshot.find("https://app.example.com").getHits(), is(1L));
+    }
+
+    private File write(List<Origin> origins) throws IOException
+    {
+        File file = new File(temporaryFolder.getRoot(), "origins.snapshot");
+        OriginSnapshotWriter.write(origins, file);
+        return file;
+    }
+
+    private static Origin origin(String url, String method)
+    {
+        Origin origin = new Origin();
+        origin.setUrl(url);
+        origin.setMethods(new ArrayList<String>(asList(method)));
+        origin.setHeaders(new ArrayList<String>(asList("Content-Type")));
+        return origin;
+    }
+}
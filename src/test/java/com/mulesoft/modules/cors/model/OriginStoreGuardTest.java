@@ -0,0 +1,267 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mulesoft.modules.cors.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import org.mule.api.store.ObjectDoesNotExistException;
+import org.mule.api.store.ObjectStore;
+import org.mule.api.store.ObjectStoreException;
+import org.mule.modules.cors.model.Origin;
+import org.mule.modules.cors.model.OriginStoreGuard;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class OriginStoreGuardTest
+{
+
+    private static final String URL = "http://example.com";
+
+    @SuppressWarnings("unchecked")
+    private final ObjectStore<Origin> store = mock(ObjectStore.class);
+
+    @Test
+    public void missingKeyIsNotAFailure() throws Exception
+    {
+        doThrow(new ObjectDoesNotExistException()).when(store).retrieve(any(Serializable.class));
+        OriginStoreGuard guard = new OriginStoreGuard(store, 0, 1, 1000, null);
+
+        assertThat(guard.retrieve(URL), nullValue());
+        assertThat(guard.getState(), is(OriginStoreGuard.State.CLOSED));
+        assertThat(guard.getFailures(), is(0L));
+    }
+
+    @Test
+    public void breakerOpensAfterFailuresInARowAndClosesOnceTheStoreAnswers() throws Exception
+    {
+        final AtomicInteger recoveries = new AtomicInteger();
+        OriginStoreGuard guard = new OriginStoreGuard(store, 0, 2, 100, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                recoveries.incrementAndGet();
+            }
+        });
+        doThrow(new ObjectStoreException()).when(store).retrieve(any(Serializable.class));
+
+        retrieveFailing(guard);
+        assertThat(guard.getState(), is(OriginStoreGuard.State.CLOSED));
+        retrieveFailing(guard);
+        assertThat(guard.getState(), is(OriginStoreGuard.State.OPEN));
+        retrieveFailing(guard);
+        verify(store, times(2)).retrieve(URL);
+        assertThat(guard.getRejections(), is(1L));
+
+        Thread.sleep(150);
+        Origin origin = new Origin();
+        doReturn(origin).when(store).retrieve(any(Serializable.class));
+        assertThat((Origin) guard.retrieve(URL), is(origin));
+        assertThat(guard.getState(), is(OriginStoreGuard.State.CLOSED));
+        assertThat(guard.getFailures(), is(2L));
+        assertThat(recoveries.get(), is(1));
+    }
+
+    @Test
+    public void failedTrialOpensTheBreakerAgain() throws Exception
+    {
+        OriginStoreGuard guard = new OriginStoreGuard(store, 0, 1, 100, null);
+        doThrow(new ObjectStoreException()).when(store).retrieve(any(Serializable.class));
+
+        retrieveFailing(guard);
+        Thread.sleep(150);
+        retrieveFailing(guard);
+        assertThat(guard.getState(), is(OriginStoreGuard.State.OPEN));
+        retrieveFailing(guard);
+        verify(store, times(2)).retrieve(URL);
+    }
+
+    @Test
+    public void slowStoreTimesOut() throws Exception
+    {
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                Thread.sleep(5000);
+                return new Origin();
+            }
+        }).when(store).retrieve(any(Serializable.class));
+        OriginStoreGuard guard = new OriginStoreGuard(store, 50, 0, 0, null);
+
+        long start = System.nanoTime();
+        retrieveFailing(guard);
+        assertThat((System.nanoTime() - start) / 1000000, lessThan(1000L));
+        assertThat(guard.getTimeouts(), is(1L));
+        assertThat(guard.getFailures(), is(1L));
+        guard.dispose();
+    }
+
+    @Test
+    public void concurrentFailedReadIsSharedAndCountedOnce() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                release.await();
+                throw new ObjectStoreException();
+            }
+        }).when(store).retrieve(any(Serializable.class));
+        final OriginStoreGuard guard = new OriginStoreGuard(store, 0, 2, 1000, null);
+
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> reads = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < 8; i++)
+        {
+            reads.add(threads.submit(new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call() throws Exception
+                {
+                    try
+                    {
+                        guard.retrieve(URL);
+                        return false;
+                    }
+                    catch (ObjectStoreException e)
+                    {
+                        return true;
+                    }
+                }
+            }));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (guard.getCoalescedReads() < 7 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(5);
+        }
+        release.countDown();
+        for (Future<Boolean> read : reads)
+        {
+            assertThat(read.get(), is(true));
+        }
+        threads.shutdown();
+
+        verify(store, times(1)).retrieve(URL);
+        assertThat(guard.getFailures(), is(1L));
+        assertThat(guard.getState(), is(OriginStoreGuard.State.CLOSED));
+    }
+
+    @Test
+    public void saturatedLookupThreadsFailReadsRightAway() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(new Answer<Object>()
+        {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable
+            {
+                //ignores the interruption of the timed out read, keeping its lookup thread busy
+                while (release.getCount() > 0)
+                {
+                    try
+                    {
+                        release.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        //keep waiting
+                    }
+                }
+                return new Origin();
+            }
+        }).when(store).retrieve(any(Serializable.class));
+        final OriginStoreGuard guard = new OriginStoreGuard(store, 100, 0, 0, null);
+
+        ExecutorService threads = Executors.newFixedThreadPool(16);
+        List<Future<Boolean>> reads = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < 16; i++)
+        {
+            final String key = URL + i;
+            reads.add(threads.submit(new Callable<Boolean>()
+            {
+                @Override
+                public Boolean call() throws Exception
+                {
+                    try
+                    {
+                        guard.retrieve(key);
+                        return false;
+                    }
+                    catch (ObjectStoreException e)
+                    {
+                        return true;
+                    }
+                }
+            }));
+        }
+        for (Future<Boolean> read : reads)
+        {
+            assertThat(read.get(), is(true));
+        }
+        threads.shutdown();
+
+        long start = System.nanoTime();
+        retrieveFailing(guard);
+        assertThat((System.nanoTime() - start) / 1000000, lessThan(100L));
+        assertThat(guard.getTimeouts(), is(17L));
+        verify(store, times(16)).retrieve(any(Serializable.class));
+
+        release.countDown();
+        guard.dispose();
+    }
+
+    private static void retrieveFailing(OriginStoreGuard guard)
+    {
+        try
+        {
+            guard.retrieve(URL);
+            fail("Store should be unavailable");
+        }
+        catch (ObjectStoreException e)
+        {
+            //expected
+        }
+    }
+}
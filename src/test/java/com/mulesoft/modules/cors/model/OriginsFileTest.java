@@ -0,0 +1,74 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mulesoft.modules.cors.model;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+import org.mule.modules.cors.model.Origin;
+import org.mule.modules.cors.model.OriginsFile;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+
+public class OriginsFileTest
+{
+
+    @Test
+    public void readsOriginsOrderedById() throws IOException
+    {
+        List<Origin> origins = OriginsFile.read(new StringReader(
+                "origin.b.url=https://b.example.com\n"
+                + "origin.a.url=https://a.example.com\n"
+                + "origin.a.methods=GET, POST\n"
+                + "origin.a.headers=Content-Type,,X-Custom \n"
+                + "origin.a.exposeHeaders=X-Request-Id\n"
+                + "origin.a.accessControlMaxAge=600\n"));
+
+        assertThat(origins.size(), is(2));
+        Origin a = origins.get(0);
+        assertThat(a.getUrl(), is("https://a.example.com"));
+        assertThat(a.getMethods(), contains("GET", "POST"));
+        assertThat(a.getHeaders(), contains("Content-Type", "X-Custom"));
+        assertThat(a.getExposeHeaders(), contains("X-Request-Id"));
+        assertThat(a.getAccessControlMaxAge(), is(600L));
+        assertThat(origins.get(1).getUrl(), is("https://b.example.com"));
+        assertThat(origins.get(1).getMethods(), empty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownAttribute() throws IOException
+    {
+        OriginsFile.read(new StringReader("origin.a.url=https://a.example.com\norigin.a.method=GET\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void missingUrl() throws IOException
+    {
+        OriginsFile.read(new StringReader("origin.a.methods=GET\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidMaxAge() throws IOException
+    {
+        OriginsFile.read(new StringReader("origin.a.url=https://a.example.com\norigin.a.accessControlMaxAge=ten\n"));
+    }
+}
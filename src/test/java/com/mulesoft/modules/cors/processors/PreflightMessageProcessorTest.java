@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mulesoft.modules.cors.processors;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.api.MuleContext;
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleException;
+import org.mule.api.MuleMessage;
+import org.mule.api.config.MuleConfiguration;
+import org.mule.api.processor.MessageProcessor;
+import org.mule.api.store.ObjectStoreManager;
+import org.mule.module.http.api.HttpConstants;
+import org.mule.module.http.api.HttpHeaders;
+import org.mule.modules.cors.Constants;
+import org.mule.modules.cors.model.CorsConfig;
+import org.mule.modules.cors.model.Origin;
+import org.mule.modules.cors.processors.PreflightMessageProcessor;
+import org.mule.util.store.InMemoryObjectStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PreflightMessageProcessorTest
+{
+
+    private static final String ORIGIN = "http://example.com";
+
+    private CorsConfig config;
+    private PreflightMessageProcessor processor;
+    private int flowInvocations;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MuleContext muleContext = mock(MuleContext.class);
+        MuleConfiguration muleConfiguration = mock(MuleConfiguration.class);
+        ObjectStoreManager objectStoreManager = mock(ObjectStoreManager.class);
+        when(muleContext.getConfiguration()).thenReturn(muleConfiguration);
+        when(muleConfiguration.getId()).thenReturn("app");
+        when(muleContext.getObjectStoreManager()).thenReturn(objectStoreManager);
+        when(objectStoreManager.getObjectStore(any(String.class))).thenReturn(new InMemoryObjectStore());
+
+        Origin origin = new Origin();
+        origin.setUrl(ORIGIN);
+        origin.setMethods(singletonList("GET"));
+        origin.setHeaders(singletonList("X-Allowed"));
+        config = new CorsConfig();
+        config.setMuleContext(muleContext);
+        config.setOrigins(singletonList(origin));
+        config.initialise();
+
+        processor = new PreflightMessageProcessor();
+        processor.setConfig(config);
+        processor.setListener(new MessageProcessor()
+        {
+            @Override
+            public MuleEvent process(MuleEvent event) throws MuleException
+            {
+                flowInvocations++;
+                return event;
+            }
+        });
+        processor.initialise();
+    }
+
+    @After
+    public void tearDown()
+    {
+        config.dispose();
+    }
+
+    @Test
+    public void allowedPreflightIsAnsweredWithoutTheFlow() throws Exception
+    {
+        MuleEvent event = event(ORIGIN, Constants.PREFLIGHT_METHOD, "GET", "X-Allowed");
+
+        assertThat(processor.process(event), is(sameInstance(event)));
+        assertThat(flowInvocations, is(0));
+        verify(event.getMessage()).setPayload(null);
+        verify(event.getMessage()).setOutboundProperty(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY, PreflightMessageProcessor.PREFLIGHT_STATUS);
+        verify(event.getMessage()).setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, ORIGIN);
+        verify(event.getMessage()).setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_HEADERS, "X-Allowed");
+    }
+
+    @Test
+    public void refusedPreflightIsAnsweredWithoutHeaders() throws Exception
+    {
+        MuleEvent event = event(ORIGIN, Constants.PREFLIGHT_METHOD, "DELETE", null);
+
+        processor.process(event);
+
+        assertThat(flowInvocations, is(0));
+        verify(event.getMessage()).setOutboundProperty(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY, PreflightMessageProcessor.PREFLIGHT_STATUS);
+        verify(event.getMessage(), never()).setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, ORIGIN);
+    }
+
+    @Test
+    public void rateLimitedPreflightKeepsItsStatus() throws Exception
+    {
+        config.dispose();
+        config.setPreflightRateLimit(1);
+        config.initialise();
+        processor.initialise();
+
+        processor.process(event(ORIGIN, Constants.PREFLIGHT_METHOD, "GET", null));
+        MuleEvent event = event(ORIGIN, Constants.PREFLIGHT_METHOD, "GET", null);
+        processor.process(event);
+
+        assertThat(flowInvocations, is(0));
+        verify(event.getMessage()).setOutboundProperty(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY, 429);
+        verify(event.getMessage(), never()).setOutboundProperty(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY,
+                                                                PreflightMessageProcessor.PREFLIGHT_STATUS);
+    }
+
+    @Test
+    public void actualRequestGoesOnToTheFlow() throws Exception
+    {
+        MuleEvent event = event(ORIGIN, "GET", null, null);
+
+        processor.process(event);
+
+        assertThat(flowInvocations, is(1));
+        verify(event.getMessage(), never()).getInboundProperty(HttpHeaders.Names.ORIGIN);
+        verify(event.getMessage(), never()).setOutboundProperty(anyString(), any());
+    }
+
+    @Test
+    public void optionsRequestWithoutOriginGoesOnToTheFlow() throws Exception
+    {
+        MuleEvent event = event(null, Constants.PREFLIGHT_METHOD, null, null);
+
+        processor.process(event);
+
+        assertThat(flowInvocations, is(1));
+        verify(event.getMessage(), never()).setOutboundProperty(anyString(), any());
+    }
+
+    private static MuleEvent event(String origin, String method, String requestMethod, String requestHeaders)
+    {
+        MuleMessage message = mock(MuleMessage.class);
+        when(message.getInboundProperty(HttpHeaders.Names.ORIGIN)).thenReturn(origin);
+        when(message.getInboundProperty(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY)).thenReturn(method);
+        when(message.getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_METHOD)).thenReturn(requestMethod);
+        when(message.getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_HEADERS)).thenReturn(requestHeaders);
+        MuleEvent event = mock(MuleEvent.class);
+        when(event.getMessage()).thenReturn(message);
+        return event;
+    }
+}
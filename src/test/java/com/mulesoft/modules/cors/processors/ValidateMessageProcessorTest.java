@@ -0,0 +1,449 @@
+/*
+ * Copyright 2014
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mulesoft.modules.cors.processors;
+
+import static java.util.Collections.singletonList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.mule.api.MessagingException;
+import org.mule.api.MuleContext;
+import org.mule.api.MuleEvent;
+import org.mule.api.MuleException;
+import org.mule.api.MuleMessage;
+import org.mule.api.config.MuleConfiguration;
+import org.mule.api.processor.MessageProcessor;
+import org.mule.api.store.ObjectStoreManager;
+import org.mule.module.http.api.HttpConstants;
+import org.mule.module.http.api.HttpHeaders;
+import org.mule.modules.cors.Constants;
+import org.mule.modules.cors.MuleCorsFilter;
+import org.mule.modules.cors.model.CompiledOrigin;
+import org.mule.modules.cors.model.CorsConfig;
+import org.mule.modules.cors.model.Origin;
+import org.mule.modules.cors.model.OriginsStoreFailurePolicy;
+import org.mule.modules.cors.model.RejectionPolicy;
+import org.mule.modules.cors.processors.ValidateMessageProcessor;
+import org.mule.util.store.InMemoryObjectStore;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ValidateMessageProcessorTest
+{
+
+    private static final String ORIGIN = "http://example.com";
+
+    private CountingCorsConfig config;
+    private TestProcessor processor;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MuleContext muleContext = mock(MuleContext.class);
+        MuleConfiguration muleConfiguration = mock(MuleConfiguration.class);
+        ObjectStoreManager objectStoreManager = mock(ObjectStoreManager.class);
+        when(muleContext.getConfiguration()).thenReturn(muleConfiguration);
+        when(muleConfiguration.getId()).thenReturn("app");
+        when(muleContext.getObjectStoreManager()).thenReturn(objectStoreManager);
+        when(objectStoreManager.getObjectStore(any(String.class))).thenReturn(new InMemoryObjectStore());
+
+        Origin origin = new Origin();
+        origin.setUrl(ORIGIN);
+        origin.setMethods(singletonList("GET"));
+        origin.setHeaders(singletonList("X-Allowed"));
+        config = new CountingCorsConfig();
+        config.setMuleContext(muleContext);
+        config.setOrigins(singletonList(origin));
+        config.initialise();
+
+        processor = new TestProcessor();
+        processor.setConfig(config);
+        processor.initialise();
+    }
+
+    @After
+    public void tearDown()
+    {
+        config.dispose();
+    }
+
+    @Test
+    public void actualRequestLooksUpOriginOnce() throws Exception
+    {
+        MuleEvent event = event(ORIGIN, "GET", null, null);
+        processor.processBlocking(event);
+
+        assertThat(config.lookups, is(1));
+        assertThat(processor.flowInvocations, is(1));
+        verify(event.getMessage(), times(1)).setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, ORIGIN);
+        verify(event.getMessage(), times(1)).getInboundProperty(HttpHeaders.Names.ORIGIN);
+        verify(event.getMessage(), times(1)).getInboundProperty(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY);
+    }
+
+    @Test
+    public void rejectedRequestDoesNotReachFlow() throws Exception
+    {
+        MuleEvent event = event(ORIGIN, "DELETE", null, null);
+        processor.processBlocking(event);
+
+        assertThat(processor.flowInvocations, is(0));
+        verify(event.getMessage()).setPayload(null);
+        verify(event.getMessage(), never()).setInvocationProperty(any(String.class), any());
+        verify(event.getMessage(), never()).setOutboundProperty(eq(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY), any());
+    }
+
+    @Test
+    public void preflightRequestLooksUpOriginOnce() throws Exception
+    {
+        MuleEvent event = event(ORIGIN, Constants.PREFLIGHT_METHOD, "GET", "X-Allowed");
+        processor.processBlocking(event);
+
+        assertThat(config.lookups, is(1));
+        assertThat(processor.flowInvocations, is(0));
+        verify(event.getMessage(), times(1)).setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, ORIGIN);
+        verify(event.getMessage(), times(1)).setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_HEADERS, "X-Allowed");
+    }
+
+    @Test
+    public void failedRequestLooksUpOriginOnce() throws Exception
+    {
+        MuleEvent event = event(ORIGIN, "GET", null, null);
+        MessagingException failure = mock(MessagingException.class);
+        when(failure.getEvent()).thenReturn(event);
+        processor.failure = failure;
+
+        try
+        {
+            processor.processBlocking(event);
+            fail("Expected the failure of the flow to be rethrown");
+        }
+        catch (MessagingException e)
+        {
+            assertThat(e, is(failure));
+        }
+
+        assertThat(config.lookups, is(1));
+        verify(event.getMessage(), times(1)).setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, ORIGIN);
+    }
+
+    @Test
+    public void nonCorsRequestIsNotLookedUp() throws Exception
+    {
+        processor.processBlocking(event(null, "GET", null, null));
+
+        assertThat(config.lookups, is(0));
+    }
+
+    @Test
+    public void nonCorsRequestIsNotWrappedWhenNonBlocking() throws Exception
+    {
+        MuleEvent event = event(null, "GET", null, null);
+
+        assertThat(processor.processNonBlocking(event), is(sameInstance(event)));
+        assertThat(processor.lastEvent, is(sameInstance(event)));
+        verify(event, never()).getReplyToHandler();
+    }
+
+    @Test
+    public void rejectedPayloadIsDrained() throws Exception
+    {
+        rejectWith(RejectionPolicy.DRAIN, 1000);
+        MuleEvent event = event(ORIGIN, "POST", null, null);
+        TrackingInputStream payload = new TrackingInputStream(1000);
+        when(event.getMessage().getPayload()).thenReturn(payload);
+
+        processor.processBlocking(event);
+
+        assertThat(processor.flowInvocations, is(0));
+        assertThat(payload.read, is(1000));
+        assertThat(payload.closed, is(true));
+        verify(event.getMessage()).setOutboundProperty(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY, 403);
+        verify(event.getMessage(), never()).setOutboundProperty(eq(HttpHeaders.Names.CONNECTION), any());
+    }
+
+    @Test
+    public void rejectedPayloadOverTheDrainLimitClosesTheConnection() throws Exception
+    {
+        rejectWith(RejectionPolicy.DRAIN, 100);
+        MuleEvent event = event(ORIGIN, "POST", null, null);
+        TrackingInputStream payload = new TrackingInputStream(1000);
+        when(event.getMessage().getPayload()).thenReturn(payload);
+
+        processor.processBlocking(event);
+
+        assertThat(payload.read, is(101));
+        assertThat(payload.closed, is(true));
+        verify(event.getMessage()).setOutboundProperty(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+    }
+
+    @Test
+    public void rejectedPayloadIsClosedUnread() throws Exception
+    {
+        config.setRejectionStatus(451);
+        rejectWith(RejectionPolicy.CLOSE, 1000);
+        MuleEvent event = event(ORIGIN, "POST", null, null);
+        TrackingInputStream payload = new TrackingInputStream(1000);
+        when(event.getMessage().getPayload()).thenReturn(payload);
+
+        processor.processBlocking(event);
+
+        assertThat(payload.read, is(0));
+        assertThat(payload.closed, is(true));
+        verify(event.getMessage()).setOutboundProperty(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY, 451);
+        verify(event.getMessage()).setOutboundProperty(HttpHeaders.Names.CONNECTION, HttpHeaders.Values.CLOSE);
+    }
+
+    @Test
+    public void allowedPayloadIsLeftToTheFlow() throws Exception
+    {
+        rejectWith(RejectionPolicy.CLOSE, 1000);
+        MuleEvent event = event(ORIGIN, "GET", null, null);
+        TrackingInputStream payload = new TrackingInputStream(1000);
+        when(event.getMessage().getPayload()).thenReturn(payload);
+
+        processor.processBlocking(event);
+
+        assertThat(processor.flowInvocations, is(1));
+        assertThat(payload.closed, is(false));
+        verify(event.getMessage(), never()).setOutboundProperty(eq(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY), any());
+    }
+
+    @Test
+    public void floodingPreflightsAreRateLimited() throws Exception
+    {
+        config.setPreflightRateLimit(1);
+        reinitialise();
+
+        processor.processBlocking(event(ORIGIN, Constants.PREFLIGHT_METHOD, "GET", null));
+        MuleEvent limited = event(ORIGIN, Constants.PREFLIGHT_METHOD, "GET", null);
+        processor.processBlocking(limited);
+
+        assertThat(config.lookups, is(1));
+        verify(limited.getMessage()).setOutboundProperty(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY, 429);
+        verify(limited.getMessage(), never()).setOutboundProperty(eq(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN), any());
+        assertThat(config.getStatistics().getRateLimitedRequests(), is(1L));
+    }
+
+    @Test
+    public void rejectedOriginIsRateLimitedBeforeItIsLookedUp() throws Exception
+    {
+        config.setRejectionRateLimit(2);
+        reinitialise();
+
+        for (int i = 0; i < 5; i++)
+        {
+            processor.processBlocking(event("http://unknown.example.com", "GET", null, null));
+        }
+        processor.processBlocking(event(ORIGIN, "GET", null, null));
+
+        assertThat(config.lookups, is(3));
+        assertThat(processor.flowInvocations, is(1));
+        assertThat(config.getStatistics().getRateLimitedRequests(), is(3L));
+        assertThat(config.getStatistics().getRejectedRequests(), is(5L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void credentialsAreRefusedWhenStoreFailsOpen() throws Exception
+    {
+        config.setOriginsStoreFailurePolicy(OriginsStoreFailurePolicy.FAIL_OPEN);
+        processor = new TestProcessor();
+        processor.setConfig(config);
+        processor.setAcceptsCredentials(true);
+        processor.initialise();
+    }
+
+    @Test
+    public void deprecatedHooksStillFilterAndAddHeaders() throws Exception
+    {
+        MuleEvent rejected = event(ORIGIN, "DELETE", null, null);
+        processor.legacyRequest(rejected);
+        verify(rejected.getMessage()).setInvocationProperty(Constants.CORS_STOP_PROCESSING_FLAG, true);
+
+        MuleEvent allowed = event(ORIGIN, "GET", null, null);
+        processor.legacyResponse(allowed);
+        verify(allowed.getMessage()).setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, ORIGIN);
+    }
+
+    @Test
+    public void requestsEvaluatedOnceDoNotLookUpTheStopFlag() throws Exception
+    {
+        MuleEvent allowed = event(ORIGIN, "GET", null, null);
+        processor.processBlocking(allowed);
+        MuleEvent nonCors = event(null, "GET", null, null);
+        processor.processNonBlocking(nonCors);
+
+        assertThat(processor.flowInvocations, is(2));
+        verify(allowed.getMessage(), never()).getInvocationProperty(any(String.class));
+        verify(nonCors.getMessage(), never()).getInvocationProperty(any(String.class));
+    }
+
+    @Test
+    public void deprecatedHeadersOfAFilteredPreflightTakeNoRateLimitToken() throws Exception
+    {
+        config.setPreflightRateLimit(1);
+        reinitialise();
+        MuleCorsFilter filter = new MuleCorsFilter(config, false, false);
+
+        MuleEvent preflight = event(ORIGIN, Constants.PREFLIGHT_METHOD, "GET", null);
+        filter.filter(preflight);
+        filter.addHeaders(preflight);
+
+        verify(preflight.getMessage(), never()).setOutboundProperty(HttpConstants.ResponseProperties.HTTP_STATUS_PROPERTY, 429);
+        verify(preflight.getMessage()).setOutboundProperty(HttpHeaders.Names.ACCESS_CONTROL_ALLOW_ORIGIN, ORIGIN);
+    }
+
+    private void reinitialise() throws Exception
+    {
+        config.dispose();
+        config.initialise();
+        processor = new TestProcessor();
+        processor.setConfig(config);
+        processor.initialise();
+        config.lookups = 0;
+    }
+
+    private void rejectWith(RejectionPolicy policy, long drainLimit) throws Exception
+    {
+        config.setRejectionPolicy(policy);
+        config.setRejectionDrainLimit(drainLimit);
+        processor = new TestProcessor();
+        processor.setConfig(config);
+        processor.initialise();
+    }
+
+    private static MuleEvent event(String origin, String method, String requestMethod, String requestHeaders)
+    {
+        MuleMessage message = mock(MuleMessage.class);
+        when(message.getInboundProperty(HttpHeaders.Names.ORIGIN)).thenReturn(origin);
+        when(message.getInboundProperty(HttpConstants.RequestProperties.HTTP_METHOD_PROPERTY)).thenReturn(method);
+        when(message.getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_METHOD)).thenReturn(requestMethod);
+        when(message.getInboundProperty(HttpHeaders.Names.ACCESS_CONTROL_REQUEST_HEADERS)).thenReturn(requestHeaders);
+        MuleEvent event = mock(MuleEvent.class);
+        when(event.getMessage()).thenReturn(message);
+        return event;
+    }
+
+    private static class CountingCorsConfig extends CorsConfig
+    {
+
+        private int lookups;
+
+        @Override
+        public CompiledOrigin findCompiledOrigin(String origin)
+        {
+            lookups++;
+            return super.findCompiledOrigin(origin);
+        }
+    }
+
+    private static class TrackingInputStream extends ByteArrayInputStream
+    {
+
+        private int read;
+        private boolean closed;
+
+        TrackingInputStream(int length)
+        {
+            super(new byte[length]);
+        }
+
+        @Override
+        public synchronized int read()
+        {
+            int value = super.read();
+            read = pos;
+            return value;
+        }
+
+        @Override
+        public synchronized long skip(long n)
+        {
+            long skipped = super.skip(n);
+            read = pos;
+            return skipped;
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+    }
+
+    private static class TestProcessor extends ValidateMessageProcessor
+    {
+
+        private MessagingException failure;
+        private int flowInvocations;
+        private MuleEvent lastEvent;
+
+        TestProcessor()
+        {
+            setListener(new MessageProcessor()
+            {
+                @Override
+                public MuleEvent process(MuleEvent event) throws MuleException
+                {
+                    flowInvocations++;
+                    lastEvent = event;
+                    if (failure != null)
+                    {
+                        throw failure;
+                    }
+                    return event;
+                }
+            });
+        }
+
+        @Override
+        public MuleEvent processBlocking(MuleEvent event) throws MuleException
+        {
+            return super.processBlocking(event);
+        }
+
+        @Override
+        public MuleEvent processNonBlocking(MuleEvent event) throws MuleException
+        {
+            return super.processNonBlocking(event);
+        }
+
+        @SuppressWarnings("deprecation")
+        MuleEvent legacyRequest(MuleEvent event) throws MuleException
+        {
+            return processRequest(event);
+        }
+
+        @SuppressWarnings("deprecation")
+        MuleEvent legacyResponse(MuleEvent event) throws MuleException
+        {
+            return processResponse(ORIGIN, "GET", null, null, event);
+        }
+    }
+}